@@ -0,0 +1,117 @@
+package fsatoregexp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generators of the synthetic FSAs in the format of "input.txt". All generated FSAs are valid:
+ * deterministic, connected, with the initial state s0 and with accepting states. Random families are
+ * seeded, so every run of a benchmark gets the same FSA.
+ */
+public final class AutomatonGenerator {
+    /**
+     * Parameterized families of FSAs
+     */
+    public enum Family {
+        /**
+         * Transition by every token from every state; targets are random
+         */
+        COMPLETE,
+        /**
+         * s0 -> s1 -> ... -> s(n-1) by the first token
+         */
+        CHAIN,
+        /**
+         * Chain closed by s(n-1) -> s0
+         */
+        CYCLE,
+        /**
+         * Chain and one more transition from each state by a random token to a random state
+         */
+        SPARSE,
+        /**
+         * Own token for each state: si -> s(i+1) by ai, and one more transition to a random state
+         */
+        LARGE_ALPHABET
+    }
+
+    private AutomatonGenerator() {
+    }
+
+    /**
+     * Generate FSA in the format of "input.txt"
+     *
+     * @param family  family of the FSA
+     * @param states  number of states
+     * @param symbols number of tokens; LARGE_ALPHABET has as many tokens as states
+     * @param seed    seed of the random targets
+     * @return text of the input
+     */
+    static String generate(Family family, int states, int symbols, long seed) {
+        Random random = new Random(seed);
+        int alphabetSize = family == Family.LARGE_ALPHABET ? states : symbols;
+
+        StringBuilder text = new StringBuilder();
+        text.append("states=[");
+        for (int i = 0; i < states; i++) {
+            text.append(i == 0 ? "" : ",").append('s').append(i);
+        }
+        text.append("]\nalpha=[");
+        for (int a = 0; a < alphabetSize; a++) {
+            text.append(a == 0 ? "" : ",").append('a').append(a);
+        }
+        text.append("]\ninitial=[s0]\naccepting=[");
+        // Every third state and the last one
+        for (int i = 0; i < states; i++) {
+            if (i % 3 == 0 || i == states - 1) {
+                text.append(i == 0 ? "" : ",").append('s').append(i);
+            }
+        }
+        text.append("]\ntrans=[");
+
+        boolean first = true;
+        for (int i = 0; i < states; i++) {
+            int next = (i + 1) % states;
+            switch (family) {
+                case COMPLETE -> {
+                    for (int a = 0; a < alphabetSize; a++) {
+                        first = appendTransition(text, first, i, a, a == 0 ? next : random.nextInt(states));
+                    }
+                }
+                case CHAIN -> {
+                    if (i < states - 1) {
+                        first = appendTransition(text, first, i, 0, next);
+                    }
+                }
+                case CYCLE -> first = appendTransition(text, first, i, 0, next);
+                case SPARSE -> {
+                    if (i < states - 1) {
+                        first = appendTransition(text, first, i, 0, next);
+                    }
+                    if (alphabetSize > 1) {
+                        first = appendTransition(text, first, i, 1 + random.nextInt(alphabetSize - 1), random.nextInt(states));
+                    }
+                }
+                case LARGE_ALPHABET -> {
+                    first = appendTransition(text, first, i, i, next);
+                    int extra = (int) ((i * 7L + 3) % states);
+                    if (extra != i) {
+                        first = appendTransition(text, first, i, extra, random.nextInt(states));
+                    }
+                }
+            }
+        }
+        text.append("]\n");
+
+        return text.toString();
+    }
+
+    static byte[] generateBytes(Family family, int states, int symbols, long seed) {
+        return generate(family, states, symbols, seed).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean appendTransition(StringBuilder text, boolean first, int source, int symbol, int target) {
+        text.append(first ? "" : ",").append('s').append(source).append(">a").append(symbol).append(">s").append(target);
+        return false;
+    }
+}
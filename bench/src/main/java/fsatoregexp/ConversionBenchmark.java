@@ -0,0 +1,69 @@
+package fsatoregexp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of the valid FSA into the RegExp DAG by each engine. Kleene's algorithm is O(n^3) in
+ * time and in the nodes of the DAG, so the sizes are much smaller than for the parsing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+    @Param({"CHAIN", "CYCLE", "COMPLETE", "SPARSE", "LARGE_ALPHABET"})
+    public AutomatonGenerator.Family family;
+
+    @Param({"8", "16", "32", "64"})
+    public int size;
+
+    @Param({"4"})
+    public int symbols;
+
+    @Param({"kleene", "kleene-simplified", "elimination"})
+    public String engine;
+
+    private ConversionEngine conversionEngine;
+    private FSA fsa;
+
+    @Setup
+    public void setUp() throws IOException, FSAException {
+        byte[] input = AutomatonGenerator.generateBytes(family, size, symbols, 42);
+        fsa = FSA.of(new FSATokenizer(new ByteArrayInputStream(input), new Checker()).parse());
+
+        if (engine.equals("elimination")) {
+            conversionEngine = new StateEliminationAlgorithm(StateEliminationAlgorithm.EliminationOrder.FEWEST_EDGES);
+        } else {
+            KleeneAlgorithm kleene = new KleeneAlgorithm();
+            kleene.setSimplify(engine.equals("kleene-simplified"));
+            conversionEngine = kleene;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        conversionEngine.close();
+    }
+
+    @Benchmark
+    public RegExp convert() {
+        return conversionEngine.getFinalRegExpNode(fsa);
+    }
+}
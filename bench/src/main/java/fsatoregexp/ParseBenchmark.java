@@ -0,0 +1,49 @@
+package fsatoregexp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the input by {@link FSATokenizer}, including the checks E1-E5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"CHAIN", "COMPLETE", "SPARSE", "LARGE_ALPHABET"})
+    public AutomatonGenerator.Family family;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"4"})
+    public int symbols;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        input = AutomatonGenerator.generateBytes(family, size, symbols, 42);
+    }
+
+    @Benchmark
+    public IndexedFSA parse() throws IOException, FSAException {
+        return new FSATokenizer(new ByteArrayInputStream(input), new Checker()).parse();
+    }
+}
@@ -0,0 +1,68 @@
+package fsatoregexp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Checks of determinism (E7) and disjoint states (E6) by {@link TransitionChecker}, which the parser feeds with
+ * each transition. The transitions of the parsed FSA are fed again, so only the checks are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+    @Param({"CHAIN", "COMPLETE", "SPARSE", "LARGE_ALPHABET"})
+    public AutomatonGenerator.Family family;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"4"})
+    public int symbols;
+
+    private final Checker checker = new Checker();
+    private IndexedFSA fsa;
+
+    @Setup
+    public void setUp() throws IOException, FSAException {
+        byte[] input = AutomatonGenerator.generateBytes(family, size, symbols, 42);
+        fsa = new FSATokenizer(new ByteArrayInputStream(input), checker).parse();
+    }
+
+    private TransitionChecker check() {
+        TransitionChecker transitionChecker =
+                new TransitionChecker(checker, fsa.getStatesCount(), fsa.getSymbolsCount());
+        for (int state = 0; state < fsa.getStatesCount(); state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                transitionChecker.addTransition(state, fsa.getSymbol(t), fsa.getTarget(t));
+            }
+        }
+        return transitionChecker;
+    }
+
+    @Benchmark
+    public boolean deterministic() {
+        return check().isDeterministic(fsa);
+    }
+
+    @Benchmark
+    public boolean disjoint() {
+        return check().isDisjoint();
+    }
+}
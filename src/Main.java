@@ -11,7 +11,62 @@
  */
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 /**
  * The Main class of the program with the general functionality.
@@ -21,717 +76,4607 @@ import java.util.ArrayList;
  */
 public class Main {
     /**
-     * Scanner from input file ("input.txt")
+     * Format of the output regExp
      */
-    private static BufferedReader reader = null;
-    /**
-     * Writer for output file ("result.txt")
-     */
-    private static BufferedWriter writer = null;
-    /**
-     * The static variable which provides the most general and complicated tests for FSA validation
-     */
-    private static final Checker CHECKER = new Checker();
-    /**
-     * Array of possible states in FSA.
-     */
-    private static final ArrayList<State> STATES = new ArrayList<>();
-    /**
-     * Array of possible transition token in FSA.
-     */
-    private static final ArrayList<Transition> ALPHA = new ArrayList<>();
-    /**
-     * An initial state of FSA. In this particular case, according to the task, only one initial state is allowed.
-     */
-    private static State initialState = null;
-    /**
-     * Array of possible final states in FSA.
-     */
-    private static final ArrayList<State> ACCEPTING_STATES = new ArrayList<>();
+    enum OutputFormat {
+        /**
+         * Text of the regExp in one line
+         */
+        FLAT,
+        /**
+         * Shared subexpressions as the named definitions (see {@link RegExpWriter#writeDefinitions(RegExp)})
+         */
+        DEFINITIONS
+    }
+
     /**
-     * Class with the implementation of Kleene's algorithm. Works for different FSAs.
+     * What to do, if the output exceeds the budget of --max-output
      */
-    private static final KleeneAlgorithm algorithmImplementor = new KleeneAlgorithm();
+    enum BudgetPolicy {
+        /**
+         * Report the error without writing the output
+         */
+        FAIL,
+        /**
+         * Switch to the minimal notation; report the error, if the output still exceeds the budget
+         */
+        COMPACT,
+        /**
+         * Switch to the format of definitions; report the error, if the output still exceeds the budget
+         */
+        DEFINITIONS
+    }
 
     /**
      * The main method provide something like "collection" of the major methods of the entire program
      *
-     * @param args canonical parameter for java entry point
+     * @param args options of the program in the form --name=value (see {@link Options})
      * @throws IOException throws when input file ("input.txt") does not exist
      */
     public static void main(String[] args) throws IOException {
-        scanFiles();
+        Options options = new Options(args);
+        ConversionEngine engine = createEngine(options);
+        RegExp.Notation notation = options.getEnum("notation", RegExp.Notation.class,
+                engine instanceof KleeneAlgorithm ? RegExp.Notation.LITERAL : RegExp.Notation.MINIMAL);
+
+        ResultCache cache = null;
+        Path cacheFile = options.has("cache-file") ? Paths.get(options.getString("cache-file", "")) : null;
+        if (options.has("cache-size") || cacheFile != null) {
+            cache = new ResultCache(engine.getSignature(), options.getLong("cache-size", 64L << 20));
+            if (cacheFile != null) {
+                cache.load(cacheFile);
+            }
+        }
+        EnumSet<FSAConverter.Reduction> reductions = EnumSet.noneOf(FSAConverter.Reduction.class);
+        if (options.getBoolean("trim")) {
+            reductions.add(FSAConverter.Reduction.TRIM);
+        }
+        if (options.getBoolean("minimize")) {
+            reductions.add(FSAConverter.Reduction.MINIMIZE);
+        }
+        FSAConverter converter = new FSAConverter(engine, cache, reductions);
 
-        makeFormattedInput();
+        ResultCache finalCache = cache;
+        Runnable saveCache = () -> {
+            if (cacheFile == null) {
+                return;
+            }
+            try {
+                finalCache.save(cacheFile);
+            } catch (IOException e) {
+                System.err.println("Cache is not saved: " + e.getMessage());
+            }
+        };
 
-        // Checking FSA for disjoint and
-        try {
-            if (!CHECKER.isDeterministic(STATES)) {
-                throw new FSANondeterministicException();
+        if (options.has("expand")) {
+            RegExpWriter regExpWriter = new RegExpWriter(Channels.newChannel(System.out));
+            DefinitionsExpander.expand(Paths.get(options.getString("expand", "")), regExpWriter);
+            regExpWriter.write("\n");
+            regExpWriter.flush();
+            System.out.flush();
+            return;
+        }
+
+        if (options.has("server")) {
+            ConversionServer server = new ConversionServer(converter, notation,
+                    ConversionServer.parseAddress(options.getString("server", "")),
+                    options.getInt("workers", Runtime.getRuntime().availableProcessors()),
+                    options.getInt("queue", 1024));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+                converter.close();
+                // Only after the workers are finished, so the cache is complete
+                saveCache.run();
+            }));
+
+            System.out.println("Listening on " + server.getAddress());
+            server.serve();
+            return;
+        }
+
+        if (options.has("batch")) {
+            String output = options.getString("batch-output", null);
+            List<Path> inputs = BatchConverter.listInputs(Paths.get(options.getString("batch", "")));
+            int failures;
+            try {
+                failures = new BatchConverter(converter, notation).run(inputs,
+                        output == null ? null : Paths.get(output), Channels.newChannel(System.out));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+                return;
             }
+            System.out.flush();
+            converter.close();
+            saveCache.run();
 
-            if (CHECKER.isDisjoint(STATES, initialState)) {
-                throw new DisjointStatesException();
+            if (failures > 0) {
+                System.err.println(failures + " of " + inputs.size() + " inputs are not converted");
+                System.exit(1);
             }
-        } catch (DisjointStatesException | FSANondeterministicException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
+            return;
         }
 
-        // Making FSA
-        FSA fsa = new FSA(STATES, ALPHA, initialState, ACCEPTING_STATES);
+        // Parsing, checking and conversion of FSA
+        ConversionStats stats = options.getBoolean("stats") ? new ConversionStats() : null;
+        ConversionResult result;
+        try (FileInputStream input = new FileInputStream("input.txt")) {
+            result = options.getBoolean("mmap") ? converter.convert(input.getChannel(), stats)
+                    : converter.convert(input, stats);
+        }
 
-        // Output final regExp in the file
-        writer.write(algorithmImplementor.getFinalRegExp(fsa) + "\n");
-        reader.close();
-        writer.close();
+        // Size of the output is known from the lengths of the nodes before the text is built
+        BigInteger budget = options.has("max-output") ? BigInteger.valueOf(options.getLong("max-output", 0)) : null;
+        OutputPlan plan = planOutput(result, notation, options.getEnum("format", OutputFormat.class, OutputFormat.FLAT),
+                budget, options.getEnum("over-budget", BudgetPolicy.class, BudgetPolicy.FAIL));
+        notation = plan.notation();
+        OutputFormat format = plan.format();
+        BigInteger outputSize = plan.size();
+        boolean overBudget = plan.overBudget();
 
-        // Output final regExp in the console
-        BufferedReader output = new BufferedReader(new FileReader("result.txt"));
-        System.out.println(output.readLine());
+        String budgetError = "Output of " + outputSize + " bytes exceeds the budget of " + budget + " bytes\n";
+        boolean dryRun = options.getBoolean("dry-run");
+        if (dryRun) {
+            System.out.println(result.isSuccess() ? "Output: " + outputSize + " bytes" : result.error().toString());
+        } else if (overBudget) {
+            // The error replaces the result, so result.txt of the previous run is not taken for the answer
+            writeError(budgetError, Paths.get("result.txt"));
+        } else {
+            ConversionStats.Measurement write = ConversionStats.begin("write", stats);
+            writeResult(result, notation, format, Paths.get("result.txt"));
+            write.end();
+            ConversionStats.recordOutput(outputSize.min(BigInteger.valueOf(Long.MAX_VALUE)).longValue(), stats);
+        }
 
-        // Complete a report
-        output.close();
+        // Reports go to stderr, so the console output stays the same as "result.txt"
+        if (dryRun && overBudget) {
+            System.err.print(budgetError);
+        }
+        if (result.reducedStatesCount() >= 0) {
+            System.err.println("States: " + result.statesCount() + " -> " + result.reducedStatesCount());
+        }
+        if (stats != null) {
+            System.err.print(stats.getSummary());
+        }
+        converter.close();
+        saveCache.run();
+
+        if (overBudget && !dryRun) {
+            System.exit(1);
+        }
     }
 
     /**
-     * Scan files input ("input.txt") and output ("result.txt"). Output file will be created again
+     * Notation, format and size of the output after the budget is applied
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param overBudget true - the output is not written, since it exceeds the budget even after the policy
      */
-    private static void scanFiles() throws IOException {
-        try {
-            reader = new BufferedReader(new FileReader("input.txt"));
-            writer = new BufferedWriter(new FileWriter("result.txt"));
-        } catch (IOException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
+    record OutputPlan(RegExp.Notation notation, OutputFormat format, BigInteger size, boolean overBudget) {
+    }
+
+    /**
+     * Apply the budget of --max-output to the result. Only the regExp is limited: the error E1-E7 is
+     * always written as it is.
+     *
+     * @param result   result of the conversion
+     * @param notation requested notation of the regExp
+     * @param format   requested format of the regExp
+     * @param budget   maximal size of the output in bytes; null - without limit
+     * @param policy   what to do, if the regExp exceeds the budget
+     * @return notation and format of the output and its size
+     * @throws IOException never, the definitions are only counted
+     */
+    static OutputPlan planOutput(ConversionResult result, RegExp.Notation notation, OutputFormat format,
+                                 BigInteger budget, BudgetPolicy policy) throws IOException {
+        BigInteger size = getOutputSize(result, notation, format);
+        if (budget == null || !result.isSuccess() || size.compareTo(budget) <= 0) {
+            return new OutputPlan(notation, format, size, false);
+        }
+
+        switch (policy) {
+            case COMPACT -> notation = RegExp.Notation.MINIMAL;
+            case DEFINITIONS -> format = OutputFormat.DEFINITIONS;
+            case FAIL -> {
+            }
         }
+        size = getOutputSize(result, notation, format);
+        return new OutputPlan(notation, format, size, size.compareTo(budget) > 0);
     }
 
     /**
-     * Parse entire set of all possible states
+     * Get size of the output of the result without writing it
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param result   result of the conversion
+     * @param notation notation of the regExp
+     * @param format   format of the regExp
+     * @return size in bytes
+     * @throws IOException never, the definitions are only counted
      */
-    private static void scanStates() throws IOException {
-        try {
-            String tempString = reader.readLine();
+    static BigInteger getOutputSize(ConversionResult result, RegExp.Notation notation, OutputFormat format)
+            throws IOException {
+        if (format == OutputFormat.FLAT || !result.isSuccess()) {
+            return result.getOutputSize(notation);
+        }
 
-            // If line is incorrect
-            if (tempString.length() < 7) {
-                throw new InputMalformedException();
+        // Definitions are linear in the nodes of the DAG, so they are just written into the counter
+        long[] size = {1};
+        RegExpWriter counter = new RegExpWriter(notation, new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer source) {
+                int count = source.remaining();
+                source.position(source.limit());
+                size[0] += count;
+                return count;
             }
 
-            // If keyword is incorrect
-            if (!tempString.startsWith("states=")) {
-                throw new InputMalformedException();
+            @Override
+            public boolean isOpen() {
+                return true;
             }
 
-            // If nothing was appeared
-            if (tempString.substring(8, tempString.length() - 1).length() == 0) {
-                throw new InputMalformedException();
+            @Override
+            public void close() {
             }
+        });
+        counter.writeDefinitions(result.regExp());
+        counter.flush();
+        return BigInteger.valueOf(size[0]);
+    }
 
-            String[] stateNames = tempString.substring(8, tempString.length() - 1).split(",");
+    /**
+     * Create the conversion algorithm chosen by the option --engine (kleene or elimination)
+     *
+     * @param options options of the program
+     * @return configured conversion algorithm
+     */
+    static ConversionEngine createEngine(Options options) {
+        String engine = options.getString("engine", "kleene");
 
-            for (String stateName : stateNames) {
-                if (!CHECKER.isStateNameCorrect(stateName)) {
-                    throw new InputMalformedException();
-                }
+        switch (engine) {
+            case "kleene":
+                KleeneAlgorithm kleeneAlgorithm = new KleeneAlgorithm();
+                kleeneAlgorithm.setParallelism(options.getInt("parallelism", KleeneAlgorithm.DEFAULT_PARALLELISM));
+                kleeneAlgorithm.setSequentialThreshold(
+                        options.getInt("sequential-threshold", KleeneAlgorithm.DEFAULT_SEQUENTIAL_THRESHOLD));
+                kleeneAlgorithm.setInPlace(options.getBoolean("in-place"));
+                kleeneAlgorithm.setSimplify(options.getBoolean("simplify"));
+                return kleeneAlgorithm;
+            case "elimination":
+                return new StateEliminationAlgorithm(options.getEnum("order",
+                        StateEliminationAlgorithm.EliminationOrder.class,
+                        StateEliminationAlgorithm.EliminationOrder.FEWEST_EDGES));
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+    }
 
-                STATES.add(new State(stateName));
+    /**
+     * Output the final regExp or the error in the file and in the console. The regExp is written
+     * in both at once, chunk by chunk.
+     *
+     * @param result   result of the conversion
+     * @param notation notation of the regExp
+     * @param format   format of the regExp
+     * @param path     output file ("result.txt"); it will be created again
+     * @throws IOException if the output file cannot be written
+     */
+    static void writeResult(ConversionResult result, RegExp.Notation notation, OutputFormat format, Path path)
+            throws IOException {
+        try (FileChannel output = FileChannel.open(path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!result.isSuccess()) {
+                writeError(result.error().toString(), output);
+                return;
             }
 
-        } catch (IOException | InputMalformedException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
+            RegExpWriter regExpWriter = new RegExpWriter(notation, output, Channels.newChannel(System.out));
+            if (format == OutputFormat.DEFINITIONS) {
+                regExpWriter.writeDefinitions(result.regExp());
+            } else {
+                regExpWriter.write(result.regExp());
+            }
+            regExpWriter.write("\n");
+            regExpWriter.flush();
         }
+
+        // Complete a report
+        System.out.flush();
     }
 
     /**
-     * Parse entire set of all possible transition tokens
+     * Output the error message instead of the regExp in the file and in the console
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param message text of the error
+     * @param path    output file ("result.txt"); it will be created again
+     * @throws IOException if the output file cannot be written
      */
-    private static void scanAlpha() throws IOException {
-        try {
-            String tempString = reader.readLine();
+    static void writeError(String message, Path path) throws IOException {
+        try (FileChannel output = FileChannel.open(path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeError(message, output);
+        }
+    }
 
-            // If line is incorrect
-            if (tempString.length() < 6) {
-                throw new InputMalformedException();
-            }
+    private static void writeError(String message, FileChannel output) throws IOException {
+        RegExpWriter regExpWriter = new RegExpWriter(output);
+        regExpWriter.write(message);
+        regExpWriter.flush();
+        System.out.println(message);
+    }
+}
 
-            // If keyword is incorrect
-            if (!tempString.startsWith("alpha=")) {
-                throw new InputMalformedException();
-            }
+/**
+ * Reentrant converter of FSA to RegExp. It keeps no mutable state, so one converter can be used
+ * from many threads at once: each call parses, checks and converts its own FSA, and the errors
+ * are returned in the result instead of the termination of the program.
+ */
+class FSAConverter implements Closeable {
+    /**
+     * Optional transformations of the valid FSA before the conversion. They keep the language, but
+     * change the text of the regExp, so they are applied only on demand.
+     */
+    enum Reduction {
+        /**
+         * Remove the unreachable and dead states (see {@link DeadStateTrimmer})
+         */
+        TRIM,
+        /**
+         * Merge the equivalent states (see {@link DFAMinimizer})
+         */
+        MINIMIZE
+    }
 
-            // If nothing was appeared
-            if (tempString.substring(7, tempString.length() - 1).length() == 0) {
-                throw new InputMalformedException();
-            }
+    /**
+     * The variable which provides the most general and complicated tests for FSA validation
+     */
+    private final Checker checker = new Checker();
+    /**
+     * Class with the implementation of the conversion algorithm. It must be safe for the concurrent use.
+     */
+    private final ConversionEngine engine;
+    /**
+     * Cache of the results; null - without cache
+     */
+    private final ResultCache cache;
+    /**
+     * Transformations of the valid FSA before the conversion, applied in the order of declaration
+     */
+    private final EnumSet<Reduction> reductions;
 
-            String[] transitionNames = tempString.substring(7, tempString.length() - 1).split(",");
+    FSAConverter(ConversionEngine engine) {
+        this(engine, null, EnumSet.noneOf(Reduction.class));
+    }
 
-            for (String transitionName : transitionNames) {
-                if (!CHECKER.isTransitionNameCorrect(transitionName)) {
-                    throw new InputMalformedException();
-                }
+    /**
+     * Create the converter with the cache and the reductions. The cache is keyed by the canonical form of
+     * FSA (see {@link ResultCache}): on the miss FSA itself is converted, so its text is the same as without
+     * the cache, and the result is returned for all FSAs with the same key.
+     *
+     * @param engine     conversion algorithm
+     * @param cache      cache of the results of this algorithm; null - without cache
+     * @param reductions transformations of the valid FSA before the conversion
+     */
+    FSAConverter(ConversionEngine engine, ResultCache cache, EnumSet<Reduction> reductions) {
+        this.engine = engine;
+        this.cache = cache;
+        this.reductions = EnumSet.copyOf(reductions);
+    }
 
-                ALPHA.add(new Transition(transitionName));
-            }
+    /**
+     * Release the threads of the engine; the converter must not be used after it
+     */
+    @Override
+    public void close() {
+        engine.close();
+    }
 
-        } catch (IOException | InputMalformedException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
-        }
+    /**
+     * Parse, check and convert FSA from the input in the format of "input.txt"
+     *
+     * @param input input stream with FSA
+     * @return regExp or the error E1-E7
+     * @throws IOException if the input cannot be read
+     */
+    public ConversionResult convert(InputStream input) throws IOException {
+        return convert(input, null);
     }
 
     /**
-     * Parse initial state of FSA
+     * Parse, check and convert FSA from the input in the format of "input.txt", measuring each phase
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param input input stream with FSA
+     * @param stats metrics of the conversion; null - without them
+     * @return regExp or the error E1-E7
+     * @throws IOException if the input cannot be read
+     */
+    public ConversionResult convert(InputStream input, ConversionStats stats) throws IOException {
+        return convert(new FSATokenizer(input, checker), stats);
+    }
+
+    /**
+     * Parse, check and convert FSA from the memory-mapped file in the format of "input.txt"
+     *
+     * @param channel channel of the input file
+     * @return regExp or the error E1-E7
+     * @throws IOException if the input cannot be read
+     */
+    public ConversionResult convert(FileChannel channel) throws IOException {
+        return convert(channel, null);
+    }
+
+    /**
+     * Parse, check and convert FSA from the memory-mapped file in the format of "input.txt", measuring each phase
+     *
+     * @param channel channel of the input file
+     * @param stats   metrics of the conversion; null - without them
+     * @return regExp or the error E1-E7
+     * @throws IOException if the input cannot be read
      */
-    private static void scanInitialState() throws IOException {
+    public ConversionResult convert(FileChannel channel, ConversionStats stats) throws IOException {
+        return convert(new FSATokenizer(channel, checker), stats);
+    }
+
+    private ConversionResult convert(FSATokenizer tokenizer, ConversionStats stats) throws IOException {
+        FSA fsa;
+        ConversionStats.Measurement parse = ConversionStats.begin("parse", stats);
         try {
-            String tempString = reader.readLine();
+            fsa = FSA.of(tokenizer.parse());
+        } catch (FSAException e) {
+            return ConversionResult.failure(e);
+        } finally {
+            parse.end();
+        }
 
-            // If line is incorrect
-            if (tempString.length() < 9) {
-                throw new InputMalformedException();
+        return convert(fsa, tokenizer.getTransitionChecker(), stats);
+    }
+
+    /**
+     * Check and convert already built FSA
+     *
+     * @param fsa FSA for the conversion
+     * @return regExp or the error E6-E7; with the reductions, also the states count before and after them
+     */
+    public ConversionResult convert(FSA fsa) {
+        return convert(fsa, null);
+    }
+
+    /**
+     * Check and convert already built FSA, measuring each phase
+     *
+     * @param fsa   FSA for the conversion
+     * @param stats metrics of the conversion; null - without them
+     * @return regExp or the error E6-E7; with the reductions, also the states count before and after them
+     */
+    public ConversionResult convert(FSA fsa, ConversionStats stats) {
+        return convert(fsa, null, stats);
+    }
+
+    /**
+     * @param transitionChecker checks of E6 and E7 made during the parsing; null - check the built FSA
+     */
+    private ConversionResult convert(FSA fsa, TransitionChecker transitionChecker, ConversionStats stats) {
+        // Checking FSA for determinism and disjoint states
+        ConversionStats.Measurement check = ConversionStats.begin("check-deterministic", stats);
+        boolean deterministic = transitionChecker == null ? checker.isDeterministic(fsa.getIndexed())
+                : transitionChecker.isDeterministic(fsa.getIndexed());
+        check.end();
+        if (!deterministic) {
+            return ConversionResult.failure(new FSANondeterministicException());
+        }
+
+        check = ConversionStats.begin("check-disjoint", stats);
+        boolean disjoint = transitionChecker == null ? checker.isDisjoint(fsa.getIndexed())
+                : transitionChecker.isDisjoint();
+        check.end();
+        if (disjoint) {
+            return ConversionResult.failure(new DisjointStatesException());
+        }
+
+        int statesCount = fsa.getIndexed().getStatesCount();
+        IndexedFSA reduced = fsa.getIndexed();
+        for (Reduction reduction : reductions) {
+            ConversionStats.Measurement reduce = ConversionStats.begin(reduction.name().toLowerCase(), stats);
+            reduced = switch (reduction) {
+                case TRIM -> DeadStateTrimmer.trim(reduced);
+                case MINIMIZE -> DFAMinimizer.minimize(reduced);
+            };
+            reduce.end();
+        }
+        if (reduced != fsa.getIndexed()) {
+            fsa = FSA.of(reduced);
+        }
+
+        RegExp regExp;
+        ConversionStats.Measurement convert = ConversionStats.begin("convert", stats);
+        if (cache == null) {
+            regExp = engine.getFinalRegExpNode(fsa, stats);
+        } else {
+            String key = ResultCache.canonicalKey(reduced);
+            regExp = cache.get(key);
+            if (regExp == null) {
+                regExp = engine.getFinalRegExpNode(fsa, stats);
+                cache.put(key, regExp);
             }
+        }
+        convert.end();
 
-            String stateName = tempString.substring(9, tempString.length() - 1);
-            String[] tempString0 = stateName.split(",");
+        return reductions.isEmpty() ? ConversionResult.success(regExp)
+                : ConversionResult.success(regExp, statesCount, reduced.getStatesCount());
+    }
+}
 
-            // If keyword is incorrect
-            if (!tempString.startsWith("initial=")) {
-                throw new InputMalformedException();
+/**
+ * Cache of the conversion results, keyed by the canonical form of the valid FSA. The canonical form
+ * contains only the states reachable from the initial state (others do not change the language),
+ * numbered in the BFS order, where transitions of each state are visited in the lexicographical
+ * order of tokens. So FSAs, which differ only by the names of states, by the order of states and
+ * transitions or by the unreachable states, have the same key.
+ * <p>
+ * The least recently used results are evicted, when the estimated memory of the cache exceeds the
+ * capacity. Cache can be saved into the file and loaded back, so the warm cache survives restarts.
+ */
+class ResultCache {
+    private static final String FILE_HEADER = "FSA_TO_REGEXP_CACHE 1";
+    /**
+     * Estimated memory of one RegExp node with its array of children
+     */
+    private static final int NODE_SIZE = 64;
+
+    private final String signature;
+    private final long capacity;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    private record Entry(RegExp regExp, long size) {
+    }
+
+    /**
+     * @param signature signature of the conversion algorithm, which results are cached
+     * @param capacity  maximal estimated memory of the cache in bytes
+     */
+    ResultCache(String signature, long capacity) {
+        this.signature = signature;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Build the key of the canonical form of the FSA
+     *
+     * @param fsa valid indexed FSA
+     * @return text of the canonical transition structure
+     */
+    public static String canonicalKey(IndexedFSA fsa) {
+        int[] labels = new int[fsa.getStatesCount()];
+        int[] order = new int[fsa.getStatesCount()];
+        Arrays.fill(labels, -1);
+
+        // BFS from the initial state
+        int size = 0;
+        labels[fsa.getInitialState()] = size;
+        order[size++] = fsa.getInitialState();
+        for (int head = 0; head < size; head++) {
+            for (int t : sortedTransitions(fsa, order[head])) {
+                int target = fsa.getTarget(t);
+                if (labels[target] < 0) {
+                    labels[target] = size;
+                    order[size++] = target;
+                }
             }
+        }
 
-            // If nothing was appeared
-            if (stateName.length() == 0) {
-                throw new InitialStateNotDefinedException();
+        TreeSet<Integer> acceptingStates = new TreeSet<>();
+        for (int state : fsa.getAcceptingStates()) {
+            if (labels[state] >= 0) {
+                acceptingStates.add(labels[state]);
             }
+        }
 
-            // If more than one initial state
-            if (tempString0.length > 1) {
-                throw new InputMalformedException();
+        StringBuilder key = new StringBuilder();
+        key.append(size).append('|').append(acceptingStates).append('|');
+        for (int label = 0; label < size; label++) {
+            for (int t : sortedTransitions(fsa, order[label])) {
+                key.append(fsa.getSymbolName(fsa.getSymbol(t))).append('>')
+                        .append(labels[fsa.getTarget(t)]).append(',');
             }
+            key.append(';');
+        }
 
-            initialState = getState(stateName);
+        return key.toString();
+    }
 
-            // If initialState not in the possible states set
-            if (initialState == null) {
-                throw new IncorrectStateException(stateName);
-            }
+    private static Integer[] sortedTransitions(IndexedFSA fsa, int state) {
+        Integer[] transitions = new Integer[fsa.getTransitionsEnd(state) - fsa.getTransitionsBegin(state)];
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = fsa.getTransitionsBegin(state) + i;
+        }
+        Arrays.sort(transitions, Comparator.comparing(t -> fsa.getSymbolName(fsa.getSymbol(t))));
+        return transitions;
+    }
+
+    public synchronized RegExp get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.regExp();
+    }
+
+    public synchronized void put(String key, RegExp regExp) {
+        long entrySize = 2L * key.length() + (long) NODE_SIZE * regExp.getUniqueNodes().size();
+        if (entrySize > capacity) {
+            return;
+        }
 
-        } catch (IOException | InputMalformedException | InitialStateNotDefinedException | IncorrectStateException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
+        Entry previous = entries.put(key, new Entry(regExp, entrySize));
+        size += entrySize - (previous == null ? 0 : previous.size());
+
+        // Eviction of the least recently used results
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > capacity && iterator.hasNext()) {
+            size -= iterator.next().size();
+            iterator.remove();
         }
     }
 
+    public synchronized int size() {
+        return entries.size();
+    }
+
     /**
-     * Parse entire set of all possible final states
+     * Save the cache into the file. The least recently used results are written first.
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param path file of the cache
+     * @throws IOException if the file cannot be written
      */
-    private static void scanAcceptingStates() throws IOException {
-        try {
-            String tempString = reader.readLine();
+    public synchronized void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
 
-            // If line is incorrect
-            if (tempString.length() < 11) {
-                throw new InputMalformedException();
-            }
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeUTF(FILE_HEADER);
+            output.writeUTF(signature);
+            output.writeInt(entries.size());
 
-            String[] stateNames = tempString.substring(11, tempString.length() - 1).split(",");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writeString(output, entry.getKey());
 
-            // If keyword is incorrect
-            if (!tempString.startsWith("accepting=")) {
-                throw new InputMalformedException();
+                ArrayList<RegExp> nodes = entry.getValue().regExp().getUniqueNodes();
+                IdentityHashMap<RegExp, Integer> indexes = new IdentityHashMap<>();
+                output.writeInt(nodes.size());
+                for (RegExp node : nodes) {
+                    output.writeByte(node.getKind().ordinal());
+                    if (node.getKind() == RegExp.Kind.SYMBOL) {
+                        writeString(output, node.getSymbol());
+                    }
+                    output.writeInt(node.getChildrenCount());
+                    for (int i = 0; i < node.getChildrenCount(); i++) {
+                        output.writeInt(indexes.get(node.getChild(i)));
+                    }
+                    indexes.put(node, indexes.size());
+                }
             }
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the results from the file. The file of the other conversion algorithm is ignored.
+     *
+     * @param path file of the cache
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
 
-            // If nothing was appeared
-            if (tempString.substring(11, tempString.length() - 1).length() == 0) {
-                throw new SetOfAcceptingStatesEmptyException();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (!input.readUTF().equals(FILE_HEADER) || !input.readUTF().equals(signature)) {
+                return;
             }
 
-            for (String stateName : stateNames) {
-                State tempState = getState(stateName);
+            RegExpFactory factory = new RegExpFactory();
+            RegExp.Kind[] kinds = RegExp.Kind.values();
+            int count = input.readInt();
+            for (int e = 0; e < count; e++) {
+                String key = readString(input);
 
-                // If particular state is not belong to the possible states set
-                if (tempState == null) {
-                    throw new IncorrectStateException(stateName);
+                RegExp[] nodes = new RegExp[input.readInt()];
+                for (int n = 0; n < nodes.length; n++) {
+                    RegExp.Kind kind = kinds[input.readByte()];
+                    String symbol = kind == RegExp.Kind.SYMBOL ? readString(input) : null;
+                    RegExp[] children = new RegExp[input.readInt()];
+                    for (int i = 0; i < children.length; i++) {
+                        children[i] = nodes[input.readInt()];
+                    }
+                    nodes[n] = factory.node(kind, symbol, children);
                 }
 
-                ACCEPTING_STATES.add(tempState);
+                put(key, nodes[nodes.length - 1]);
             }
-
-        } catch (IOException | IncorrectStateException | SetOfAcceptingStatesEmptyException
-                | InputMalformedException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
         }
     }
 
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+/**
+ * Batch mode: conversion of many FSAs in one JVM. Inputs are converted concurrently, each on its own
+ * thread (virtual thread, if the runtime supports them), and the error of one input does not stop
+ * the others.
+ */
+class BatchConverter {
+    private final FSAConverter converter;
+    private final RegExp.Notation notation;
+
+    BatchConverter(FSAConverter converter, RegExp.Notation notation) {
+        this.converter = converter;
+        this.notation = notation;
+    }
+
     /**
-     * Parse the entire set of all possible transitions. Transitions in this implementation presented as
-     * links from state_1 --> (possible_states_from_state_1)
+     * Get the list of inputs of the batch
      *
-     * @throws IOException throws when input file ("input.txt") does not exist
+     * @param batch directory with the inputs, or the manifest file with one path of the input per line
+     *              (relative paths are resolved against the directory of the manifest)
+     * @return paths of the inputs
+     * @throws IOException if the directory or the manifest cannot be read
      */
-    private static void scanTransitions() throws IOException {
-        try {
-            String tempString = reader.readLine();
+    public static List<Path> listInputs(Path batch) throws IOException {
+        ArrayList<Path> inputs = new ArrayList<>();
 
-            // If line is incorrect
-            if (tempString.length() < 7) {
-                throw new InputMalformedException();
+        if (Files.isDirectory(batch)) {
+            try (Stream<Path> files = Files.list(batch)) {
+                files.filter(Files::isRegularFile).sorted().forEach(inputs::add);
             }
+            return inputs;
+        }
 
-            String[] transitions = tempString.substring(7, tempString.length() - 1).split(",");
-
-            // If keyword is incorrect
-            if (!tempString.startsWith("trans=")) {
-                throw new InputMalformedException();
+        Path directory = batch.toAbsolutePath().normalize().getParent();
+        for (String line : Files.readAllLines(batch, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                inputs.add(directory.resolve(line.strip()));
             }
+        }
+        return inputs;
+    }
 
-            // If nothing was appeared
-            if (tempString.substring(7, tempString.length() - 1).length() == 0) {
-                return;
+    /**
+     * Convert all inputs. If the output directory is given, result of each input is written into
+     * the file with the same name there (in the format of "result.txt"); otherwise, each result is
+     * written as the line "input&lt;TAB&gt;result" into the combined output, in the order of inputs.
+     *
+     * @param inputs          paths of the inputs
+     * @param outputDirectory directory for the results; null - combined output
+     * @param combined        channel of the combined output
+     * @return number of inputs, which were not converted (errors E1-E7 or I/O errors)
+     * @throws IOException              if the combined output cannot be written
+     * @throws IllegalArgumentException if some input is in the output directory, so its result would overwrite it
+     */
+    public int run(List<Path> inputs, Path outputDirectory, WritableByteChannel combined) throws IOException {
+        if (outputDirectory != null) {
+            if (Files.isDirectory(outputDirectory)) {
+                Path directory = outputDirectory.toRealPath();
+                for (Path input : inputs) {
+                    if (Files.exists(input) && directory.equals(input.toRealPath().getParent())) {
+                        throw new IllegalArgumentException("Output directory " + outputDirectory
+                                + " contains the input " + input);
+                    }
+                }
             }
+            Files.createDirectories(outputDirectory);
+        }
 
-            for (String transition : transitions) {
-                // Transition split by separator = ">"
-                String[] transitionSplit = transition.split(">");
+        ArrayList<Future<ConversionResult>> results = new ArrayList<>();
+        ExecutorService executor = newExecutor();
+        try {
+            for (Path input : inputs) {
+                results.add(executor.submit(() -> {
+                    ConversionResult result;
+                    try (FileInputStream stream = new FileInputStream(input.toFile())) {
+                        result = converter.convert(stream);
+                    }
+                    if (outputDirectory != null) {
+                        write(result, outputDirectory.resolve(input.getFileName()));
+                    }
+                    return result;
+                }));
+            }
 
-                // Incorrect transition regex
-                if (transitionSplit.length != 3) {
-                    throw new InputMalformedException();
+            int failures = 0;
+            RegExpWriter regExpWriter = new RegExpWriter(notation, combined);
+            for (int i = 0; i < inputs.size(); i++) {
+                ConversionResult result = null;
+                String failure = null;
+                try {
+                    result = results.get(i).get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause().toString();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Batch was interrupted");
                 }
 
-                State sourceState = getState(transitionSplit[0]);
-                // If state_source from transition does not belong set of possible states
-                if (sourceState == null) {
-                    throw new IncorrectStateException(transitionSplit[0]);
+                if (result == null || !result.isSuccess()) {
+                    failures++;
                 }
-
-                Transition trans = getTransition(transitionSplit[1]);
-                // If transition token from transition does not belong set of possible transitions
-                if (trans == null) {
-                    throw new TransitionIsNotPresentedException(transitionSplit[1]);
+                if (outputDirectory != null && failure == null) {
+                    continue;
                 }
 
-                State destState = getState(transitionSplit[2]);
-                // If state_dest from transition does not belong set of possible states
-                if (destState == null) {
-                    throw new IncorrectStateException(transitionSplit[2]);
+                regExpWriter.write(inputs.get(i).toString());
+                regExpWriter.write("\t");
+                if (failure != null) {
+                    regExpWriter.write(failure);
+                } else if (result.isSuccess()) {
+                    regExpWriter.write(result.regExp());
+                } else {
+                    regExpWriter.write(result.error().toString().strip());
                 }
+                regExpWriter.write("\n");
+            }
+            regExpWriter.flush();
+
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void write(ConversionResult result, Path path) throws IOException {
+        try (FileChannel output = FileChannel.open(path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RegExpWriter regExpWriter = new RegExpWriter(notation, output);
+            if (result.isSuccess()) {
+                regExpWriter.write(result.regExp());
+                regExpWriter.write("\n");
+            } else {
+                regExpWriter.write(result.error().toString());
+            }
+            regExpWriter.flush();
+        }
+    }
+
+    /**
+     * Create the executor with one virtual thread per task. Virtual threads are available since
+     * Java 21, so on the older runtimes the fixed pool of platform threads is used.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
+
+/**
+ * Daemon mode: the converter listens on the loopback TCP port or on the Unix-domain socket and
+ * converts FSAs sent by the clients, so the start of JVM and the warm-up of JIT are paid only once.
+ * <p>
+ * Request is FSA in the format of "input.txt": five lines, an empty line ends the request earlier.
+ * Response is one line: the regExp or the error message. Requests of one connection can be pipelined:
+ * they are converted concurrently by the bounded pool of workers, but the responses are sent in the
+ * order of the requests.
+ */
+class ConversionServer implements Closeable {
+    private static final int LINES_PER_REQUEST = 5;
+    /**
+     * Marker of the end of the responses of one connection
+     */
+    private static final Future<ConversionResult> END_OF_RESPONSES = CompletableFuture.completedFuture(null);
+    /**
+     * Time, during which the closing server still reads the requests of the clients to answer them by the error.
+     * The connection, which is closed with the unread requests, is reset, and the client loses the responses.
+     */
+    private static final long LINGER_MILLIS = 1000;
+
+    private final FSAConverter converter;
+    private final RegExp.Notation notation;
+    private final SocketAddress address;
+    private final ServerSocketChannel serverChannel;
+    /**
+     * Workers with the bounded queue. If the queue is full, the connection converts its request itself,
+     * so it stops reading new requests until there is the free space. After the shutdown the request
+     * gets the error response instead (see {@link ConversionTask#reject()}).
+     */
+    private final ThreadPoolExecutor workers;
+    /**
+     * Threads, which read the requests and write the responses of connections
+     */
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    /**
+     * Open connections; the future is completed, when the reader of the connection submits no more requests
+     */
+    private final ConcurrentHashMap<SocketChannel, CompletableFuture<Void>> clients = new ConcurrentHashMap<>();
+    private volatile boolean closing;
+
+    ConversionServer(FSAConverter converter, RegExp.Notation notation, SocketAddress address, int workersCount,
+                     int queueSize) throws IOException {
+        this.converter = converter;
+        this.notation = notation;
+        this.serverChannel = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.address = serverChannel.getLocalAddress();
+        this.workers = new ThreadPoolExecutor(workersCount, workersCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), (task, executor) -> {
+                    if (!executor.isShutdown()) {
+                        task.run();
+                    } else if (task instanceof ConversionTask conversionTask) {
+                        conversionTask.reject();
+                    }
+                });
+    }
+
+    /**
+     * Conversion of one request, which completes the response of the connection
+     */
+    private class ConversionTask implements Runnable {
+        private final byte[] fsa;
+        private final CompletableFuture<ConversionResult> response = new CompletableFuture<>();
+
+        ConversionTask(byte[] fsa) {
+            this.fsa = fsa;
+        }
+
+        @Override
+        public void run() {
+            try {
+                response.complete(converter.convert(new ByteArrayInputStream(fsa)));
+            } catch (Throwable e) {
+                response.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Complete the response by the error, since the request cannot be converted any more
+         */
+        void reject() {
+            response.completeExceptionally(new RejectedExecutionException("Server is shutting down"));
+        }
+    }
+
+    /**
+     * Parse the address of the server
+     *
+     * @param value "unix:PATH" for the Unix-domain socket; otherwise, the port on the loopback interface
+     * @return address of the server
+     */
+    public static SocketAddress parseAddress(String value) {
+        if (value.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(value.substring("unix:".length()));
+        }
+
+        try {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Server address must be a port or unix:PATH, got: " + value);
+        }
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Accept the connections until the server is closed
+     *
+     * @throws IOException if the connection cannot be accepted
+     */
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+
+            CompletableFuture<Void> reader = new CompletableFuture<>();
+            clients.put(client, reader);
+            LinkedBlockingQueue<Future<ConversionResult>> responses = new LinkedBlockingQueue<>();
+            try {
+                connections.execute(() -> readRequests(client, responses, reader));
+                connections.execute(() -> writeResponses(client, responses));
+            } catch (RejectedExecutionException e) {
+                // Server is closing
+                clients.remove(client);
+                reader.complete(null);
+                client.close();
+            }
+        }
+    }
+
+    private void readRequests(SocketChannel client, LinkedBlockingQueue<Future<ConversionResult>> responses,
+                              CompletableFuture<Void> reader) {
+        try {
+            InputStream input = new BufferedInputStream(Channels.newInputStream(client));
+            byte[] request;
+            while ((request = readRequest(input)) != null) {
+                ConversionTask task = new ConversionTask(request);
+                responses.put(task.response);
+                if (closing) {
+                    task.reject();
+                } else {
+                    workers.execute(task);
+                }
+            }
+        } catch (IOException e) {
+            // Connection is closed by the client or by the server
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.complete(null);
+            responses.add(END_OF_RESPONSES);
+        }
+    }
+
+    /**
+     * Read lines of one FSA. Empty lines before the request are skipped.
+     *
+     * @return bytes of the request; null if the input is over
+     */
+    private byte[] readRequest(InputStream input) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        int lines = 0;
+        int lineLength = 0;
+
+        while (lines < LINES_PER_REQUEST) {
+            int c = input.read();
+            if (c == -1) {
+                break;
+            }
+            if (c == '\r') {
+                continue;
+            }
+
+            if (c == '\n') {
+                if (lineLength == 0) {
+                    if (lines > 0) {
+                        break;
+                    }
+                    continue;
+                }
+                lines++;
+                lineLength = 0;
+            } else {
+                lineLength++;
+            }
+            request.write(c);
+        }
+
+        return lines == 0 && lineLength == 0 ? null : request.toByteArray();
+    }
+
+    private void writeResponses(SocketChannel client, LinkedBlockingQueue<Future<ConversionResult>> responses) {
+        try (client) {
+            RegExpWriter regExpWriter = new RegExpWriter(notation, client);
+            Future<ConversionResult> response;
+            while ((response = responses.take()) != END_OF_RESPONSES) {
+                ConversionResult result;
+                try {
+                    result = response.get();
+                } catch (ExecutionException e) {
+                    regExpWriter.write(e.getCause().toString());
+                    regExpWriter.write("\n");
+                    continue;
+                }
+
+                if (result.isSuccess()) {
+                    regExpWriter.write(result.regExp());
+                } else {
+                    regExpWriter.write(result.error().toString().strip());
+                }
+                regExpWriter.write("\n");
+
+                // Responses are sent as soon as there is nothing more to write
+                if (responses.isEmpty()) {
+                    regExpWriter.flush();
+                }
+            }
+            regExpWriter.flush();
+        } catch (IOException e) {
+            // Connection is closed by the client
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Wait for the readers of all connections
+     *
+     * @param deadline {@link System#nanoTime()}, after which the readers are not waited for
+     */
+    private void awaitReaders(long deadline) throws InterruptedException {
+        for (CompletableFuture<Void> reader : clients.values()) {
+            try {
+                reader.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Graceful shutdown: new connections and requests are not accepted, but the responses to the
+     * already received requests are sent. Requests, which are received during the shutdown, get the error response.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        serverChannel.close();
+        connections.shutdown();
+
+        try {
+            awaitReaders(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS));
+            for (SocketChannel client : clients.keySet()) {
+                try {
+                    client.shutdownInput();
+                } catch (IOException e) {
+                    // Connection is already closed
+                }
+            }
+            // Readers may still submit the requests, so the workers are shut down after them
+            awaitReaders(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+
+            workers.shutdown();
+            connections.awaitTermination(1, TimeUnit.MINUTES);
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.shutdownNow();
+        workers.shutdownNow();
+
+        if (address instanceof UnixDomainSocketAddress unixAddress) {
+            Files.deleteIfExists(unixAddress.getPath());
+        }
+    }
+}
+
+/**
+ * Result of the conversion: regExp accepted by FSA or the error of the validation
+ *
+ * @param regExp             root of the regExp; null if FSA is incorrect
+ * @param error              error E1-E7; null if FSA is correct
+ * @param statesCount        count of states of the valid FSA; -1 without reductions
+ * @param reducedStatesCount count of states of the FSA after the reductions; -1 without reductions
+ */
+record ConversionResult(RegExp regExp, FSAException error, int statesCount, int reducedStatesCount) {
+    static ConversionResult success(RegExp regExp) {
+        return new ConversionResult(regExp, null, -1, -1);
+    }
+
+    /**
+     * @param statesCount        count of states of the valid FSA
+     * @param reducedStatesCount count of states of the converted FSA after the reductions
+     */
+    static ConversionResult success(RegExp regExp, int statesCount, int reducedStatesCount) {
+        return new ConversionResult(regExp, null, statesCount, reducedStatesCount);
+    }
+
+    static ConversionResult failure(FSAException error) {
+        return new ConversionResult(null, error, -1, -1);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Get size of the written result without building its text: the regExp with the line feed, or the error message
+     *
+     * @param notation notation of the regExp
+     * @return size of the output in bytes
+     */
+    public BigInteger getOutputSize(RegExp.Notation notation) {
+        return isSuccess() ? regExp.getExactLength(notation).add(BigInteger.ONE)
+                : BigInteger.valueOf(error.toString().length());
+    }
+}
+
+/**
+ * Metrics of one conversion for the summary of --stats: wall time and allocated bytes of each phase,
+ * duration, new nodes and the longest cell of each step of Kleene's algorithm, and the size of the output.
+ * The same measurements are committed as JFR events ({@link PhaseEvent}, {@link KleeneStepEvent},
+ * {@link OutputEvent}), so the production runs can be profiled just by -XX:StartFlightRecording.
+ * Stats are filled by one conversion at a time, but the steps can be added from the worker threads.
+ */
+class ConversionStats {
+    /**
+     * Number of the slowest steps in the summary
+     */
+    private static final int SUMMARY_STEPS = 10;
+
+    record Phase(String name, long nanos, long allocatedBytes) {
+    }
+
+    record Step(int k, long nanos, long newNodes, long maxCellLength) {
+    }
+
+    private final ArrayList<Phase> phases = new ArrayList<>();
+    private final ArrayList<Step> steps = new ArrayList<>();
+    private long outputBytes = -1;
+
+    public synchronized void addPhase(Phase phase) {
+        phases.add(phase);
+    }
+
+    public synchronized void addStep(Step step) {
+        steps.add(step);
+    }
+
+    public synchronized void setOutputBytes(long outputBytes) {
+        this.outputBytes = outputBytes;
+    }
+
+    /**
+     * Record the size of the written result
+     *
+     * @param outputBytes size of the result in bytes
+     * @param stats       stats of the conversion; null - only the JFR event
+     */
+    public static void recordOutput(long outputBytes, ConversionStats stats) {
+        OutputEvent event = new OutputEvent();
+        if (event.shouldCommit()) {
+            event.outputBytes = outputBytes;
+            event.commit();
+        }
+        if (stats != null) {
+            stats.setOutputBytes(outputBytes);
+        }
+    }
+
+    /**
+     * Start the measurement of the phase
+     *
+     * @param name  name of the phase, e.g. "parse"
+     * @param stats stats of the conversion; null - only the JFR event
+     * @return measurement, which must be ended by {@link Measurement#end()}
+     */
+    public static Measurement begin(String name, ConversionStats stats) {
+        return new Measurement(name, stats);
+    }
+
+    /**
+     * Get bytes allocated by all live threads. Pool workers are alive during the whole conversion,
+     * so the difference of two calls includes their allocations.
+     *
+     * @return allocated bytes; -1 if JVM does not count them
+     */
+    public static long getAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            long total = 0;
+            for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+                total += Math.max(bytes, 0);
+            }
+            return total;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the summary: phases, the slowest steps of Kleene's algorithm and the size of the output
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%-20s %12s %16s%n", "Phase", "Time, ms", "Allocated, KB"));
+        for (Phase phase : phases) {
+            summary.append(String.format("%-20s %12.3f %16s%n", phase.name(), phase.nanos() / 1e6,
+                    phase.allocatedBytes() < 0 ? "-" : Long.toString(phase.allocatedBytes() / 1024)));
+        }
+
+        if (!steps.isEmpty()) {
+            long totalNodes = 0;
+            Step longestCell = steps.get(0);
+            for (Step step : steps) {
+                totalNodes += step.newNodes();
+                if (step.maxCellLength() > longestCell.maxCellLength()) {
+                    longestCell = step;
+                }
+            }
+            summary.append(String.format("Kleene steps: %d, new nodes: %d, longest cell: %d chars at k=%d%n",
+                    steps.size(), totalNodes, longestCell.maxCellLength(), longestCell.k()));
+
+            ArrayList<Step> slowest = new ArrayList<>(steps);
+            slowest.sort(Comparator.comparingLong(Step::nanos).reversed());
+            summary.append(String.format("%8s %12s %12s %20s%n", "k", "Time, ms", "New nodes", "Longest cell"));
+            for (Step step : slowest.subList(0, Math.min(SUMMARY_STEPS, slowest.size()))) {
+                summary.append(String.format("%8d %12.3f %12d %20d%n", step.k(), step.nanos() / 1e6,
+                        step.newNodes(), step.maxCellLength()));
+            }
+        }
+
+        if (outputBytes >= 0) {
+            summary.append(String.format("Output: %d bytes%n", outputBytes));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Measurement of one phase: JFR event and, if stats are collected, the phase in the summary
+     */
+    static class Measurement {
+        private final PhaseEvent event = new PhaseEvent();
+        private final ConversionStats stats;
+        private final long start;
+        private final long allocatedBefore;
+
+        private Measurement(String name, ConversionStats stats) {
+            this.stats = stats;
+            boolean measureAllocation = stats != null || event.isEnabled();
+            this.allocatedBefore = measureAllocation ? getAllocatedBytes() : -1;
+            event.phase = name;
+            event.begin();
+            this.start = System.nanoTime();
+        }
+
+        public void end() {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            long allocated = allocatedBefore >= 0 ? getAllocatedBytes() - allocatedBefore : -1;
+            if (event.shouldCommit()) {
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+            if (stats != null) {
+                stats.addPhase(new Phase(event.phase, nanos, allocated));
+            }
+        }
+    }
+}
+
+/**
+ * JFR event of one phase of the conversion: parsing, checks, reductions, conversion or writing
+ */
+@Name("fsatoregexp.Phase")
+@Label("FSA Conversion Phase")
+@Category("FSA to RegExp")
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
+
+/**
+ * JFR event of one step k of Kleene's algorithm
+ */
+@Name("fsatoregexp.KleeneStep")
+@Label("Kleene Step")
+@Category("FSA to RegExp")
+class KleeneStepEvent extends Event {
+    @Label("Step")
+    int k;
+
+    @Label("States")
+    int states;
+
+    @Label("New Nodes")
+    long newNodes;
+
+    @Label("Longest Cell")
+    @Description("Length of the text of the longest cell R^k_ij in the literal notation")
+    long maxCellLength;
+}
+
+/**
+ * JFR event with the size of the written result
+ */
+@Name("fsatoregexp.Output")
+@Label("FSA Conversion Output")
+@Category("FSA to RegExp")
+class OutputEvent extends Event {
+    @Label("Output Size")
+    @DataAmount
+    long outputBytes;
+}
+
+/**
+ * Command line options of the program. Each option has the form --name=value; option without value
+ * (e.g. --name) is treated as --name=true.
+ */
+class Options {
+    private final HashMap<String, String> values = new HashMap<>();
+
+    Options(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+    }
+
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    public String getString(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    public boolean getBoolean(String name) {
+        return Boolean.parseBoolean(values.get(name));
+    }
+
+    /**
+     * Get the value of enum option, written in lower case with '-' instead of '_' (e.g. fewest-edges)
+     */
+    public <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Enum.valueOf(type, value.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown value of the option --" + name + ": " + value);
+        }
+    }
+
+    public long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects an integer, got: " + value);
+        }
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects an integer, got: " + value);
+        }
+    }
+}
+
+/**
+ * The most essential class of the program. Implement all significant tests for the FSA validation
+ */
+class Checker {
+    private static final int A_ASCII = 65;
+    private static final int Z_ASCII = 90;
+    private static final int a_ASCII = 97;
+    private static final int z_ASCII = 122;
+    private static final int UNDERSCORE_ASCII = 95;
+    private static final int ASCII_0 = 48;
+    private static final int ASCII_9 = 57;
+    /**
+     * Check if the state name is correct according to task's condition
+     *
+     * @param name current state name for checking
+     * @return true - if name is correct; Otherwise, false
+     */
+    public boolean isStateNameCorrect(String name) {
+        for (char c : name.toCharArray()) {
+            if (!isStateNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the char can be used in the state name (latin letter or digit)
+     *
+     * @param c char for checking
+     * @return true - if char is correct; Otherwise, false
+     */
+    public boolean isStateNameChar(char c) {
+        return isLetter(c) || isDigit(c);
+    }
+
+    /**
+     * Check if the transition token name is correct according to task's condition
+     *
+     * @param name current transition token name for checking
+     * @return true - if name is correct; Otherwise, false
+     */
+    public boolean isTransitionNameCorrect(String name) {
+        for (char c : name.toCharArray()) {
+            if (!isTransitionNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the char can be used in the transition token name (latin letter, digit or '_')
+     *
+     * @param c char for checking
+     * @return true - if char is correct; Otherwise, false
+     */
+    public boolean isTransitionNameChar(char c) {
+        return isLetter(c) || isDigit(c) || c == UNDERSCORE_ASCII;
+    }
+
+    private boolean isLetter(Character c) {
+        return (A_ASCII <= c && c <= Z_ASCII) || (a_ASCII <= c && c <= z_ASCII);
+    }
+
+    private boolean isDigit(Character c) {
+        return (ASCII_0 <= c && c <= ASCII_9);
+    }
+
+    /**
+     * Check if states are disjoint somehow. Directions of transitions are ignored, so the states are
+     * joined by {@link UnionFind} over their indexes.
+     *
+     * @param fsa indexed FSA
+     * @return true - if states are disjoint; Otherwise, false
+     */
+    public boolean isDisjoint(IndexedFSA fsa) {
+        UnionFind components = new UnionFind(fsa.getStatesCount());
+        for (int state = 0; state < fsa.getStatesCount(); state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                components.union(state, fsa.getTarget(t));
+            }
+        }
+
+        return components.getComponentsCount() != 1;
+    }
+
+    /**
+     * Check if there is more than one transition with the same transition token for some state
+     *
+     * @param fsa indexed FSA
+     * @return true - if there is no more than one transition with the same transition token for each token;
+     * Otherwise, false
+     */
+    public boolean isDeterministic(IndexedFSA fsa) {
+        // lastSeen[symbol] - the last state (+1), which has the transition by the symbol
+        int[] lastSeen = new int[fsa.getSymbolsCount()];
+
+        for (int state = 0; state < fsa.getStatesCount(); state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                if (lastSeen[fsa.getSymbol(t)] == state + 1) {
+                    return false;
+                }
+                lastSeen[fsa.getSymbol(t)] = state + 1;
+            }
+        }
+
+        return true;
+    }
+}
+
+/**
+ * Union-find over the states by their indexes, with union by size and path halving, so the connectivity
+ * is checked without any copy of the graph and without recursion.
+ */
+class UnionFind {
+    private final int[] parents;
+    private final int[] sizes;
+    private int componentsCount;
+
+    UnionFind(int size) {
+        parents = new int[size];
+        sizes = new int[size];
+        for (int element = 0; element < size; element++) {
+            parents[element] = element;
+            sizes[element] = 1;
+        }
+        componentsCount = size;
+    }
+
+    /**
+     * Join the components of two elements
+     */
+    public void union(int first, int second) {
+        int firstRoot = findRoot(first);
+        int secondRoot = findRoot(second);
+        if (firstRoot == secondRoot) {
+            return;
+        }
+
+        // The smaller component is attached to the bigger one
+        if (sizes[firstRoot] < sizes[secondRoot]) {
+            int temp = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = temp;
+        }
+        parents[secondRoot] = firstRoot;
+        sizes[firstRoot] += sizes[secondRoot];
+        componentsCount--;
+    }
+
+    public int getComponentsCount() {
+        return componentsCount;
+    }
+
+    private int findRoot(int element) {
+        while (parents[element] != element) {
+            // Path halving
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+}
+
+/**
+ * Checks E6 and E7 fused into the parsing: each transition is checked, when it is read, so the FSA is not
+ * walked again after the parsing. Connectivity is checked by {@link UnionFind}. Determinism is checked as in
+ * {@link Checker#isDeterministic(IndexedFSA)}, by the last source of each token, which needs the transitions
+ * of each state to be listed together. If a state appears again after other states, the determinism is
+ * checked after the parsing by {@link Checker#isDeterministic(IndexedFSA)} instead.
+ */
+class TransitionChecker {
+    private final Checker checker;
+    /**
+     * lastSeen[symbol] - the last source (+1), which has the transition by the symbol
+     */
+    private final int[] lastSeen;
+    /**
+     * Bits of the sources, which transitions are already over, i.e. followed by the transitions of another source
+     */
+    private final long[] finishedSources;
+    private int currentSource = -1;
+    private boolean grouped = true;
+    private boolean deterministic = true;
+    private final UnionFind components;
+
+    /**
+     * @param checker      checker for the determinism of the transitions, which are not grouped by the sources
+     * @param statesCount  number of states
+     * @param symbolsCount number of transition tokens
+     */
+    TransitionChecker(Checker checker, int statesCount, int symbolsCount) {
+        this.checker = checker;
+        this.lastSeen = new int[symbolsCount];
+        this.finishedSources = new long[(statesCount + Long.SIZE - 1) / Long.SIZE];
+        this.components = new UnionFind(statesCount);
+    }
+
+    public void addTransition(int source, int symbol, int target) {
+        if (source != currentSource && grouped) {
+            if (currentSource >= 0) {
+                finishedSources[currentSource / Long.SIZE] |= 1L << currentSource;
+            }
+            grouped = (finishedSources[source / Long.SIZE] & (1L << source)) == 0;
+            currentSource = source;
+        }
+        if (grouped) {
+            if (lastSeen[symbol] == source + 1) {
+                deterministic = false;
+            }
+            lastSeen[symbol] = source + 1;
+        }
+        components.union(source, target);
+    }
+
+    /**
+     * Check if there is no more than one transition with the same transition token for each state
+     *
+     * @param fsa parsed FSA; it is walked only if the transitions were not grouped by the sources
+     * @return true - if FSA is deterministic; Otherwise, false
+     */
+    public boolean isDeterministic(IndexedFSA fsa) {
+        return grouped ? deterministic : checker.isDeterministic(fsa);
+    }
+
+    /**
+     * Check if states are disjoint somehow (directions of transitions are ignored)
+     */
+    public boolean isDisjoint() {
+        return components.getComponentsCount() != 1;
+    }
+}
+
+/**
+ * Class, which represents the simple model of FSA.
+ */
+class FSA {
+    /**
+     * Model of State objects; null, while the FSA is made only of the indexed one (see {@link #of(IndexedFSA)})
+     */
+    private ArrayList<State> states;
+    private ArrayList<Transition> alpha;
+    private State initialState;
+    private ArrayList<State> acceptingStates;
+    /**
+     * Indexed representation of this FSA, built on demand
+     */
+    private IndexedFSA indexed;
+
+    public FSA(ArrayList<State> states, ArrayList<Transition> alpha, State initialState, ArrayList<State> acceptingStates) {
+        this(states, alpha, initialState, acceptingStates, null);
+    }
+
+    public FSA(ArrayList<State> states, ArrayList<Transition> alpha, State initialState,
+               ArrayList<State> acceptingStates, IndexedFSA indexed) {
+        this.states = states;
+        this.alpha = alpha;
+        this.initialState = initialState;
+        this.acceptingStates = acceptingStates;
+        this.indexed = indexed;
+    }
+
+    public ArrayList<State> getStates() {
+        buildModel();
+        return states;
+    }
+
+    public ArrayList<Transition> getAlpha() {
+        buildModel();
+        return alpha;
+    }
+
+    public State getInitialState() {
+        buildModel();
+        return initialState;
+    }
+
+    public void setInitialState(State initialState) {
+        buildModel();
+        this.initialState = initialState;
+        this.indexed = null;
+    }
+
+    public ArrayList<State> getAcceptingStates() {
+        buildModel();
+        return acceptingStates;
+    }
+
+    /**
+     * Make FSA of the indexed FSA. The conversion works on the indexed FSA, so the State objects are
+     * created only if they are requested.
+     *
+     * @param indexed indexed FSA
+     * @return FSA with the same states, tokens and transitions
+     */
+    public static FSA of(IndexedFSA indexed) {
+        return new FSA(null, null, null, null, indexed);
+    }
+
+    /**
+     * Create the State objects of the indexed FSA, when they are needed for the first time
+     */
+    private void buildModel() {
+        if (states != null) {
+            return;
+        }
+
+        ArrayList<State> states = new ArrayList<>();
+        for (int i = 0; i < indexed.getStatesCount(); i++) {
+            states.add(new State(indexed.getStateName(i)));
+        }
+
+        ArrayList<Transition> alpha = new ArrayList<>();
+        for (int i = 0; i < indexed.getSymbolsCount(); i++) {
+            alpha.add(new Transition(indexed.getSymbolName(i)));
+        }
+
+        ArrayList<State> acceptingStates = new ArrayList<>();
+        for (int state : indexed.getAcceptingStates()) {
+            acceptingStates.add(states.get(state));
+        }
+
+        for (int state = 0; state < states.size(); state++) {
+            for (int t = indexed.getTransitionsBegin(state); t < indexed.getTransitionsEnd(state); t++) {
+                states.get(state).addPossibleTransition(states.get(indexed.getTarget(t)), alpha.get(indexed.getSymbol(t)));
+            }
+        }
+
+        this.states = states;
+        this.alpha = alpha;
+        this.initialState = states.get(indexed.getInitialState());
+        this.acceptingStates = acceptingStates;
+    }
+
+    /**
+     * Get indexed representation of the FSA. It is built once, when it is needed for the first time.
+     *
+     * @return indexed FSA
+     */
+    public IndexedFSA getIndexed() {
+        if (indexed == null) {
+            indexed = IndexedFSA.of(this);
+        }
+        return indexed;
+    }
+}
+
+/**
+ * Compact representation of FSA. States and transition tokens are interned to ints (indexes of
+ * declaration) by {@link NameTable}, and transitions are stored in the CSR form: transitions from state s are
+ * [getTransitionsBegin(s), getTransitionsEnd(s)) in the arrays of symbols and targets.
+ */
+final class IndexedFSA {
+    private final NameTable stateNames;
+    private final NameTable symbolNames;
+    private final int initialState;
+    private final int[] acceptingStates;
+    private final int[] offsets;
+    private final int[] symbols;
+    private final int[] targets;
+
+    private IndexedFSA(Builder builder) {
+        this.stateNames = builder.stateNames;
+        this.symbolNames = builder.symbolNames;
+        this.initialState = builder.initialState;
+        this.acceptingStates = Arrays.copyOf(builder.acceptingStates, builder.acceptingCount);
+
+        // Counting sort of the transitions by the source state
+        int statesCount = stateNames.size();
+        this.offsets = new int[statesCount + 1];
+        for (int t = 0; t < builder.transitionsCount; t++) {
+            offsets[builder.sources[t] + 1]++;
+        }
+        for (int s = 0; s < statesCount; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+
+        this.symbols = new int[builder.transitionsCount];
+        this.targets = new int[builder.transitionsCount];
+        int[] positions = Arrays.copyOf(offsets, statesCount);
+        for (int t = 0; t < builder.transitionsCount; t++) {
+            int position = positions[builder.sources[t]]++;
+            symbols[position] = builder.symbols[t];
+            targets[position] = builder.targets[t];
+        }
+    }
+
+    /**
+     * Build the indexed representation of the FSA, made of State objects
+     *
+     * @param fsa original FSA
+     * @return indexed FSA with the same order of states, tokens and transitions
+     */
+    public static IndexedFSA of(FSA fsa) {
+        Builder builder = new Builder();
+        IdentityHashMap<State, Integer> indexes = new IdentityHashMap<>();
+        IdentityHashMap<Transition, Integer> symbolIndexes = new IdentityHashMap<>();
+
+        for (State state : fsa.getStates()) {
+            indexes.put(state, builder.addState(state.getName()));
+        }
+        for (Transition transition : fsa.getAlpha()) {
+            symbolIndexes.put(transition, builder.addSymbol(transition.name()));
+        }
+        builder.setInitialState(indexes.get(fsa.getInitialState()));
+        for (State state : fsa.getAcceptingStates()) {
+            builder.addAcceptingState(indexes.get(state));
+        }
+
+        for (State state : fsa.getStates()) {
+            for (int i = 0; i < state.getPossibleStatesToMove().size(); i++) {
+                int target = indexes.get(state.getPossibleStatesToMove().get(i));
+                for (Transition transition : state.getTransitions().get(i)) {
+                    Integer symbol = symbolIndexes.get(transition);
+                    builder.addTransition(indexes.get(state),
+                            symbol != null ? symbol : builder.getSymbolIndex(transition.name()), target);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+
+    public int getStatesCount() {
+        return stateNames.size();
+    }
+
+    public int getSymbolsCount() {
+        return symbolNames.size();
+    }
+
+    public String getStateName(int state) {
+        return stateNames.get(state);
+    }
+
+    public String getSymbolName(int symbol) {
+        return symbolNames.get(symbol);
+    }
+
+    /**
+     * Get index of the state by its name
+     *
+     * @param name name of the state
+     * @return index of the first state with this name; -1 if there is no such state
+     */
+    public int getStateIndex(String name) {
+        return stateNames.find(name);
+    }
+
+    /**
+     * Get index of the transition token by its name
+     *
+     * @param name name of the transition token
+     * @return index of the first token with this name; -1 if there is no such token
+     */
+    public int getSymbolIndex(String name) {
+        return symbolNames.find(name);
+    }
+
+    public int getInitialState() {
+        return initialState;
+    }
+
+    public int[] getAcceptingStates() {
+        return acceptingStates.clone();
+    }
+
+    public int getTransitionsCount() {
+        return symbols.length;
+    }
+
+    public int getTransitionsBegin(int state) {
+        return offsets[state];
+    }
+
+    public int getTransitionsEnd(int state) {
+        return offsets[state + 1];
+    }
+
+    public int getSymbol(int transition) {
+        return symbols[transition];
+    }
+
+    public int getTarget(int transition) {
+        return targets[transition];
+    }
+
+    /**
+     * Builder of the IndexedFSA. States and tokens get the indexes in the order of addition.
+     * Builder must not be used after {@link #build()}, because the built FSA shares its names.
+     */
+    static class Builder {
+        private final NameTable stateNames = new NameTable();
+        private final NameTable symbolNames = new NameTable();
+        private int initialState = -1;
+        private int[] acceptingStates = new int[4];
+        private int acceptingCount = 0;
+        private int[] sources = new int[16];
+        private int[] symbols = new int[16];
+        private int[] targets = new int[16];
+        private int transitionsCount = 0;
+
+        /**
+         * Add the state. Repeated name gets the new index, but the search by name returns the first one.
+         *
+         * @param name name of the state
+         * @return index of the added state
+         */
+        public int addState(String name) {
+            return stateNames.add(name);
+        }
+
+        /**
+         * Add the transition token. Repeated name gets the new index, but the search by name returns the first one.
+         *
+         * @param name name of the transition token
+         * @return index of the added token
+         */
+        public int addSymbol(String name) {
+            return symbolNames.add(name);
+        }
+
+        public int getStatesCount() {
+            return stateNames.size();
+        }
+
+        public int getSymbolsCount() {
+            return symbolNames.size();
+        }
+
+        public int getStateIndex(String name) {
+            return stateNames.find(name);
+        }
+
+        public int getSymbolIndex(String name) {
+            return symbolNames.find(name);
+        }
+
+        /**
+         * Get index of the state by the ASCII bytes of its name without creation of the String
+         */
+        public int getStateIndex(byte[] name, int length) {
+            return stateNames.find(name, length);
+        }
+
+        /**
+         * Get index of the transition token by the ASCII bytes of its name without creation of the String
+         */
+        public int getSymbolIndex(byte[] name, int length) {
+            return symbolNames.find(name, length);
+        }
+
+        public void setInitialState(int state) {
+            initialState = state;
+        }
+
+        public void addAcceptingState(int state) {
+            if (acceptingCount == acceptingStates.length) {
+                acceptingStates = Arrays.copyOf(acceptingStates, acceptingCount * 2);
+            }
+            acceptingStates[acceptingCount++] = state;
+        }
+
+        public void addTransition(int source, int symbol, int target) {
+            if (transitionsCount == sources.length) {
+                sources = Arrays.copyOf(sources, transitionsCount * 2);
+                symbols = Arrays.copyOf(symbols, transitionsCount * 2);
+                targets = Arrays.copyOf(targets, transitionsCount * 2);
+            }
+            sources[transitionsCount] = source;
+            symbols[transitionsCount] = symbol;
+            targets[transitionsCount] = target;
+            transitionsCount++;
+        }
+
+        public IndexedFSA build() {
+            return new IndexedFSA(this);
+        }
+    }
+}
+
+/**
+ * Removal of the useless states: states, which are not reachable from the initial state, and states, from which
+ * no accepting state is reachable. They do not change the language, but each of them costs a whole step of
+ * Kleene's algorithm and fills the cells with {} subterms.
+ */
+class DeadStateTrimmer {
+    /**
+     * Remove the useless states and their transitions. The initial state is always kept.
+     *
+     * @param fsa valid FSA
+     * @return FSA with the useful states in the order of declaration; the same FSA if all states are useful
+     */
+    public static IndexedFSA trim(IndexedFSA fsa) {
+        int statesCount = fsa.getStatesCount();
+
+        // Reverse transitions in the CSR form: sources of the transitions to q are sources[offsets[q], offsets[q + 1])
+        int[] offsets = new int[statesCount + 1];
+        for (int t = 0; t < fsa.getTransitionsCount(); t++) {
+            offsets[fsa.getTarget(t) + 1]++;
+        }
+        for (int state = 0; state < statesCount; state++) {
+            offsets[state + 1] += offsets[state];
+        }
+        int[] sources = new int[fsa.getTransitionsCount()];
+        int[] positions = Arrays.copyOf(offsets, statesCount);
+        for (int state = 0; state < statesCount; state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                sources[positions[fsa.getTarget(t)]++] = state;
+            }
+        }
+
+        // Forward search from the initial state
+        boolean[] reachable = new boolean[statesCount];
+        int[] stack = new int[statesCount];
+        int top = 0;
+        reachable[fsa.getInitialState()] = true;
+        stack[top++] = fsa.getInitialState();
+        while (top > 0) {
+            int state = stack[--top];
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                if (!reachable[fsa.getTarget(t)]) {
+                    reachable[fsa.getTarget(t)] = true;
+                    stack[top++] = fsa.getTarget(t);
+                }
+            }
+        }
+
+        // Reverse search from the accepting states
+        boolean[] live = new boolean[statesCount];
+        for (int state : fsa.getAcceptingStates()) {
+            if (!live[state]) {
+                live[state] = true;
+                stack[top++] = state;
+            }
+        }
+        while (top > 0) {
+            int state = stack[--top];
+            for (int s = offsets[state]; s < offsets[state + 1]; s++) {
+                if (!live[sources[s]]) {
+                    live[sources[s]] = true;
+                    stack[top++] = sources[s];
+                }
+            }
+        }
+
+        int[] newIndex = new int[statesCount];
+        int keptCount = 0;
+        for (int state = 0; state < statesCount; state++) {
+            boolean kept = (reachable[state] && live[state]) || state == fsa.getInitialState();
+            newIndex[state] = kept ? keptCount++ : -1;
+        }
+        if (keptCount == statesCount) {
+            return fsa;
+        }
+
+        IndexedFSA.Builder builder = new IndexedFSA.Builder();
+        for (int state = 0; state < statesCount; state++) {
+            if (newIndex[state] >= 0) {
+                builder.addState(fsa.getStateName(state));
+            }
+        }
+        for (int symbol = 0; symbol < fsa.getSymbolsCount(); symbol++) {
+            builder.addSymbol(fsa.getSymbolName(symbol));
+        }
+        builder.setInitialState(newIndex[fsa.getInitialState()]);
+        for (int state : fsa.getAcceptingStates()) {
+            if (newIndex[state] >= 0) {
+                builder.addAcceptingState(newIndex[state]);
+            }
+        }
+        for (int state = 0; state < statesCount; state++) {
+            if (newIndex[state] < 0) {
+                continue;
+            }
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                if (newIndex[fsa.getTarget(t)] >= 0) {
+                    builder.addTransition(newIndex[state], fsa.getSymbol(t), newIndex[fsa.getTarget(t)]);
+                }
+            }
+        }
+
+        return builder.build();
+    }
+}
+
+/**
+ * Minimization of the deterministic FSA by the Hopcroft's partition refinement. Missing transitions go to
+ * the virtual sink state, which is dropped from the result, so the result is the smallest FSA with
+ * the same language and with the transitions of the original FSA (maybe, with one dead state).
+ * States of the result are named after the first declared state of their class and keep the order of declaration.
+ */
+class DFAMinimizer {
+    /**
+     * Minimize the deterministic FSA
+     *
+     * @param fsa valid deterministic FSA
+     * @return FSA with the equivalent states merged; the same FSA if there are no equivalent states
+     */
+    public static IndexedFSA minimize(IndexedFSA fsa) {
+        int statesCount = fsa.getStatesCount();
+        int symbolsCount = fsa.getSymbolsCount();
+        int size = statesCount + 1;
+        int sink = statesCount;
+
+        // Predecessors by the symbol in the CSR form: sources of the transitions by a to q are
+        // sources[inverseOffsets[a * size + q], inverseOffsets[a * size + q + 1])
+        int[] inverseOffsets = new int[symbolsCount * size + 1];
+        boolean[] defined = new boolean[symbolsCount * size];
+        for (int state = 0; state < statesCount; state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                inverseOffsets[fsa.getSymbol(t) * size + fsa.getTarget(t) + 1]++;
+                defined[fsa.getSymbol(t) * size + state] = true;
+            }
+        }
+        for (int a = 0; a < symbolsCount; a++) {
+            for (int state = 0; state < size; state++) {
+                if (!defined[a * size + state]) {
+                    inverseOffsets[a * size + sink + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < symbolsCount * size; i++) {
+            inverseOffsets[i + 1] += inverseOffsets[i];
+        }
+        int[] sources = new int[inverseOffsets[symbolsCount * size]];
+        int[] positions = Arrays.copyOf(inverseOffsets, symbolsCount * size);
+        for (int state = 0; state < statesCount; state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                sources[positions[fsa.getSymbol(t) * size + fsa.getTarget(t)]++] = state;
+            }
+        }
+        for (int a = 0; a < symbolsCount; a++) {
+            for (int state = 0; state < size; state++) {
+                if (!defined[a * size + state]) {
+                    sources[positions[a * size + sink]++] = state;
+                }
+            }
+        }
+
+        // Partition: states of block b are elements[first[b], end[b]); marked states are at the beginning of the block
+        int[] elements = new int[size];
+        int[] location = new int[size];
+        int[] blockOf = new int[size];
+        int[] first = new int[size];
+        int[] end = new int[size];
+        int[] marked = new int[size];
+        int blocksCount = 0;
+
+        boolean[] accepting = new boolean[size];
+        for (int state : fsa.getAcceptingStates()) {
+            accepting[state] = true;
+        }
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int begin = count;
+            for (int state = 0; state < size; state++) {
+                if (accepting[state] == (pass == 0)) {
+                    elements[count] = state;
+                    location[state] = count++;
+                    blockOf[state] = blocksCount;
+                }
+            }
+            if (count > begin) {
+                first[blocksCount] = begin;
+                end[blocksCount++] = count;
+            }
+        }
+
+        // Splitters (block, symbol): waiting[b * symbolsCount + a] - the splitter is in the queue
+        boolean[] waiting = new boolean[size * symbolsCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        if (blocksCount == 2) {
+            int smaller = end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+            for (int a = 0; a < symbolsCount; a++) {
+                waiting[smaller * symbolsCount + a] = true;
+                queue.add(smaller * symbolsCount + a);
+            }
+        }
+
+        int[] splitter = new int[size];
+        int[] touched = new int[size];
+        while (!queue.isEmpty()) {
+            int pair = queue.poll();
+            waiting[pair] = false;
+            int splitterBlock = pair / symbolsCount;
+            int a = pair % symbolsCount;
+
+            // States of the splitter are copied, since the splitter itself can be split below
+            int splitterSize = end[splitterBlock] - first[splitterBlock];
+            System.arraycopy(elements, first[splitterBlock], splitter, 0, splitterSize);
+
+            int touchedCount = 0;
+            for (int i = 0; i < splitterSize; i++) {
+                int q = splitter[i];
+                for (int s = inverseOffsets[a * size + q]; s < inverseOffsets[a * size + q + 1]; s++) {
+                    int p = sources[s];
+                    int block = blockOf[p];
+                    int markedEnd = first[block] + marked[block];
+                    if (location[p] < markedEnd) {
+                        continue;
+                    }
+                    if (marked[block] == 0) {
+                        touched[touchedCount++] = block;
+                    }
+
+                    // Swap p to the marked part of its block
+                    int other = elements[markedEnd];
+                    elements[markedEnd] = p;
+                    elements[location[p]] = other;
+                    location[other] = location[p];
+                    location[p] = markedEnd;
+                    marked[block]++;
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int block = touched[i];
+                int markedCount = marked[block];
+                marked[block] = 0;
+                if (markedCount == end[block] - first[block]) {
+                    continue;
+                }
+
+                // Marked states become the new block
+                int newBlock = blocksCount++;
+                first[newBlock] = first[block];
+                end[newBlock] = first[block] + markedCount;
+                first[block] = end[newBlock];
+                for (int j = first[newBlock]; j < end[newBlock]; j++) {
+                    blockOf[elements[j]] = newBlock;
+                }
+
+                int smaller = end[newBlock] - first[newBlock] <= end[block] - first[block] ? newBlock : block;
+                for (int c = 0; c < symbolsCount; c++) {
+                    int added = waiting[block * symbolsCount + c] ? newBlock : smaller;
+                    waiting[added * symbolsCount + c] = true;
+                    queue.add(added * symbolsCount + c);
+                }
+            }
+        }
+
+        if (blocksCount == size || (blocksCount == size - 1 && end[blockOf[sink]] - first[blockOf[sink]] == 2)) {
+            return fsa;
+        }
+
+        // States of the result in the order of the first declared state of each class; the class of only sink is dropped
+        int[] newIndex = new int[blocksCount];
+        Arrays.fill(newIndex, -1);
+        IndexedFSA.Builder builder = new IndexedFSA.Builder();
+        int[] representatives = new int[blocksCount];
+        for (int state = 0; state < statesCount; state++) {
+            int block = blockOf[state];
+            if (newIndex[block] < 0) {
+                representatives[block] = state;
+                newIndex[block] = builder.addState(fsa.getStateName(state));
+            }
+        }
+        for (int symbol = 0; symbol < symbolsCount; symbol++) {
+            builder.addSymbol(fsa.getSymbolName(symbol));
+        }
+        builder.setInitialState(newIndex[blockOf[fsa.getInitialState()]]);
+        for (int state : fsa.getAcceptingStates()) {
+            if (representatives[blockOf[state]] == state) {
+                builder.addAcceptingState(newIndex[blockOf[state]]);
+            }
+        }
+        for (int state = 0; state < statesCount; state++) {
+            if (representatives[blockOf[state]] != state) {
+                continue;
+            }
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                builder.addTransition(newIndex[blockOf[state]], fsa.getSymbol(t), newIndex[blockOf[fsa.getTarget(t)]]);
+            }
+        }
+
+        return builder.build();
+    }
+}
+
+/**
+ * Class, which represents the Kleene's Algorithm for understanding the RegExp, which
+ * accepted by given FSA.
+ * Cells R^k_ij are stored as nodes of the shared RegExp DAG (see {@link RegExpFactory}), so every
+ * step allocates only O(n^2) new nodes and the text is produced once at the end.
+ */
+class KleeneAlgorithm implements ConversionEngine {
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    /**
+     * FSAs with fewer states are computed sequentially: the forking costs more than the step itself
+     */
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 32;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int sequentialThreshold = DEFAULT_SEQUENTIAL_THRESHOLD;
+    /**
+     * Pool of the parallel steps, shared by all conversions of this algorithm; created on the first use
+     */
+    private ForkJoinPool pool = null;
+    private boolean inPlace = false;
+    private boolean simplify = false;
+
+    /**
+     * Set the number of threads for the computation of each step. 1 - always sequential computation.
+     *
+     * @param parallelism level of parallelism of the ForkJoinPool
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive, got: " + parallelism);
+        }
+        if (parallelism != this.parallelism) {
+            close();
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the minimal number of states, for which the steps are computed in parallel
+     *
+     * @param sequentialThreshold number of states
+     */
+    public void setSequentialThreshold(int sequentialThreshold) {
+        this.sequentialThreshold = sequentialThreshold;
+    }
+
+    /**
+     * Set the in-place mode: only one matrix is kept and updated on each step, instead of creating
+     * the new one. It halves the peak memory of the cells' references.
+     *
+     * @param inPlace true - update one matrix in place; false - create the new matrix on each step
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
+    /**
+     * Set the simplification of the cells during the construction (see {@link SimplifyingRegExpFactory}).
+     *
+     * @param simplify true - simplify cells; false - keep the literal form of the task
+     */
+    public void setSimplify(boolean simplify) {
+        this.simplify = simplify;
+    }
+
+    /**
+     * Get the pool of the parallel steps. One pool is shared by the concurrent conversions (e.g. of the batch
+     * and server modes), so their steps take at most the parallelism threads together, and the threads
+     * are started once.
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Shut down the pool of the parallel steps; the next parallel conversion creates the new one
+     */
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    @Override
+    public String getSignature() {
+        return simplify ? "kleene-simplified" : "kleene";
+    }
+
+    /**
+     * Get final accepted by given FSA RegExp without reducing terms.
+     * @param fsa for which will be found RegExp
+     * @return string, represents the possible regExp, accepted by FSA.
+     */
+    public String getFinalRegExp(FSA fsa) {
+        return getFinalRegExpNode(fsa).toString();
+    }
+
+    /**
+     * Get final accepted by given FSA RegExp as the root of the RegExp DAG.
+     * @param fsa for which will be found RegExp
+     * @return root node, which text is the same as {@link #getFinalRegExp(FSA)}
+     */
+    @Override
+    public RegExp getFinalRegExpNode(FSA fsa) {
+        return getFinalRegExpNode(fsa, null);
+    }
+
+    /**
+     * Get final accepted by given FSA RegExp as the root of the RegExp DAG. Each step is committed as
+     * {@link KleeneStepEvent}, when JFR records it, and is added to the stats.
+     * @param fsa   for which will be found RegExp
+     * @param stats metrics of the conversion; null - without them
+     * @return root node, which text is the same as {@link #getFinalRegExp(FSA)}
+     */
+    @Override
+    public RegExp getFinalRegExpNode(FSA fsa, ConversionStats stats) {
+        RegExpFactory factory = simplify ? new SimplifyingRegExpFactory() : new RegExpFactory();
+        IndexedFSA indexed = fsa.getIndexed();
+        RegExp[][] steps = initialStep(indexed, factory);
+
+        ForkJoinPool pool = parallelism > 1 && steps.length >= sequentialThreshold ? getPool() : null;
+        for (int k = 0; k < steps.length; k++) {
+            KleeneStepEvent event = new KleeneStepEvent();
+            if (stats == null && !event.isEnabled()) {
+                steps = makeStep(pool, factory, steps, k);
+                continue;
+            }
+
+            long nodesBefore = factory.size();
+            long start = System.nanoTime();
+            event.begin();
+            steps = makeStep(pool, factory, steps, k);
+            event.end();
+            long nanos = System.nanoTime() - start;
+            long newNodes = factory.size() - nodesBefore;
+            long maxCellLength = getMaxCellLength(steps);
+
+            if (event.shouldCommit()) {
+                event.k = k;
+                event.states = steps.length;
+                event.newNodes = newNodes;
+                event.maxCellLength = maxCellLength;
+                event.commit();
+            }
+            if (stats != null) {
+                stats.addStep(new ConversionStats.Step(k, nanos, newNodes, maxCellLength));
+            }
+        }
+
+        RegExp[] row = steps[indexed.getInitialState()];
+        ArrayList<RegExp> acceptedCells = new ArrayList<>();
+        for (int finalState : indexed.getAcceptingStates()) {
+            acceptedCells.add(row[finalState]);
+        }
+
+        // Possible only for the trimmed FSA, where no accepting state is reachable
+        if (acceptedCells.isEmpty()) {
+            return factory.emptySet();
+        }
+        return factory.union(acceptedCells);
+    }
+
+    /**
+     * Create the demand-driven query of the cells R^n_ij for the arbitrary pairs of states. Unlike
+     * {@link #getFinalRegExpNode(FSA)}, only the cells needed by the queries are computed.
+     *
+     * @param fsa valid FSA
+     * @return query, which shares the computed cells between all its calls
+     */
+    public KleeneQuery query(FSA fsa) {
+        return new KleeneQuery(fsa.getIndexed(), simplify ? new SimplifyingRegExpFactory() : new RegExpFactory());
+    }
+
+    /**
+     * Create the session, which keeps all steps of the FSA and computes again only the cells changed by
+     * the appended states and transitions (see {@link KleeneSession}). Steps of the session are sequential.
+     *
+     * @param fsa valid FSA, the initial content of the session
+     * @return session with the states, transitions, initial and accepting states of the FSA
+     */
+    public KleeneSession session(FSA fsa) {
+        KleeneSession session = new KleeneSession(simplify ? new SimplifyingRegExpFactory() : new RegExpFactory());
+        IndexedFSA indexed = fsa.getIndexed();
+        for (int state = 0; state < indexed.getStatesCount(); state++) {
+            session.addState(indexed.getStateName(state));
+        }
+        for (int state = 0; state < indexed.getStatesCount(); state++) {
+            for (int t = indexed.getTransitionsBegin(state); t < indexed.getTransitionsEnd(state); t++) {
+                session.addTransition(indexed.getStateName(state), indexed.getSymbolName(indexed.getSymbol(t)),
+                        indexed.getStateName(indexed.getTarget(t)));
+            }
+        }
+        session.setInitialState(indexed.getStateName(indexed.getInitialState()));
+        for (int state : indexed.getAcceptingStates()) {
+            session.addAcceptingState(indexed.getStateName(state));
+        }
+        return session;
+    }
+
+    /**
+     * Make step k of the algorithm. Each cell depends only on the previous step, so if the pool is
+     * given, blocks of rows are computed in parallel. Equal nodes are shared by the factory, so the
+     * result is the same as the sequential one.
+     *
+     * @param pool  pool for the parallel computation; null - sequential computation
+     * @param steps matrix of the previous step
+     * @param k     number of the step
+     * @return matrix of the step k (the same matrix as steps in the in-place mode)
+     */
+    private RegExp[][] makeStep(ForkJoinPool pool, RegExpFactory factory, RegExp[][] steps, int k) {
+        Step step = new Step(factory, steps, k, inPlace);
+
+        if (pool == null) {
+            step.computeRows(0, steps.length);
+        } else {
+            int blockSize = Math.max(1, steps.length / (parallelism * 4));
+            pool.invoke(new StepRowsTask(step, 0, steps.length, blockSize));
+        }
+
+        return step.newArr;
+    }
+
+    /**
+     * Get length of the longest cell of the step in the literal notation
+     */
+    private static long getMaxCellLength(RegExp[][] steps) {
+        long maxLength = 0;
+        for (RegExp[] row : steps) {
+            for (RegExp cell : row) {
+                maxLength = Math.max(maxLength, cell.getLength(RegExp.Notation.LITERAL));
+            }
+        }
+        return maxLength;
+    }
+
+    /**
+     * R^k_ij = (R^{k-1}_ik)(R^{k-1}_kk)*(R^{k-1}_kj)|(R^{k-1}_ij)
+     */
+    static RegExp formatRegExp(RegExpFactory factory, RegExp ik, RegExp starKK, RegExp kj, RegExp ij) {
+        return factory.union(factory.concat(ik, starKK, kj), ij);
+    }
+
+    /**
+     * Get indexes of the cells, which are not {}
+     */
+    static int[] getNonEmptyIndexes(RegExp[] cells) {
+        int count = 0;
+        int[] indexes = new int[cells.length];
+        for (int j = 0; j < cells.length; j++) {
+            if (cells[j].getKind() != RegExp.Kind.EMPTY_SET) {
+                indexes[count++] = j;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    /**
+     * Computation of the step k. Only row k and column k of the previous step are needed besides
+     * the cell itself, so in the in-place mode just them are copied and the cells are updated in
+     * the same matrix; otherwise, the new matrix is created.
+     * <p>
+     * Most cells of the real FSAs are {}, so with the simplification only the cells in the non-empty
+     * columns of row k and the non-empty rows of column k are computed: the others stay R^{k-1}_ij,
+     * and their rows are shared with the previous matrix. Without it, the term (R_ik)(R_kk)*(R_kj)
+     * with {} is created once per column (or per row), instead of once per cell.
+     */
+    private static class Step {
+        private final RegExpFactory factory;
+        private final RegExp[][] steps;
+        private final RegExp[][] newArr;
+        private final RegExp[] rowK;
+        private final RegExp[] columnK;
+        private final RegExp starKK;
+        private final boolean inPlace;
+        private final boolean sparse;
+        /**
+         * Sparse mode: indexes of the non-empty cells of row k
+         */
+        private final int[] nonEmptyRowK;
+        /**
+         * Literal mode: terms ({})(R_kk)*(R_kj) of the rows with empty R_ik
+         */
+        private final RegExp[] emptyIkTerms;
+
+        Step(RegExpFactory factory, RegExp[][] steps, int k, boolean inPlace) {
+            this.factory = factory;
+            this.steps = steps;
+            this.inPlace = inPlace;
+            this.newArr = inPlace ? steps : new RegExp[steps.length][];
+            this.rowK = inPlace ? steps[k].clone() : steps[k];
+            this.columnK = new RegExp[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                columnK[i] = steps[i][k];
+            }
+            this.starKK = factory.star(rowK[k]);
+
+            this.sparse = factory instanceof SimplifyingRegExpFactory;
+            this.nonEmptyRowK = sparse ? getNonEmptyIndexes(rowK) : null;
+            this.emptyIkTerms = sparse ? null : new RegExp[rowK.length];
+            if (!sparse) {
+                for (int j = 0; j < rowK.length; j++) {
+                    emptyIkTerms[j] = factory.concat(factory.emptySet(), starKK, rowK[j]);
+                }
+            }
+        }
+
+        void computeRows(int from, int to) {
+            for (int i = from; i < to; i++) {
+                RegExp[] row = steps[i];
+                RegExp ik = columnK[i];
+                if (sparse) {
+                    if (ik.getKind() == RegExp.Kind.EMPTY_SET) {
+                        newArr[i] = row;
+                        continue;
+                    }
+
+                    RegExp[] newRow = inPlace ? row : row.clone();
+                    for (int j : nonEmptyRowK) {
+                        newRow[j] = formatRegExp(factory, ik, starKK, rowK[j], row[j]);
+                    }
+                    newArr[i] = newRow;
+                    continue;
+                }
+
+                RegExp[] newRow = inPlace ? row : new RegExp[row.length];
+                RegExp emptyKjTerm = factory.concat(ik, starKK, factory.emptySet());
+                for (int j = 0; j < row.length; j++) {
+                    RegExp term = ik.getKind() == RegExp.Kind.EMPTY_SET ? emptyIkTerms[j]
+                            : rowK[j].getKind() == RegExp.Kind.EMPTY_SET ? emptyKjTerm
+                            : factory.concat(ik, starKK, rowK[j]);
+                    newRow[j] = factory.union(term, row[j]);
+                }
+                newArr[i] = newRow;
+            }
+        }
+    }
+
+    /**
+     * Task for computation of rows [from, to) of the step.
+     */
+    private static class StepRowsTask extends RecursiveAction {
+        private final Step step;
+        private final int from;
+        private final int to;
+        private final int blockSize;
+
+        StepRowsTask(Step step, int from, int to, int blockSize) {
+            this.step = step;
+            this.from = from;
+            this.to = to;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= blockSize) {
+                step.computeRows(from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new StepRowsTask(step, from, middle, blockSize),
+                    new StepRowsTask(step, middle, to, blockSize));
+        }
+    }
+
+    private RegExp[][] initialStep(IndexedFSA fsa, RegExpFactory factory) {
+        int size = fsa.getStatesCount();
+        RegExp[][] steps = new RegExp[size][size];
+
+        for (int i = 0; i < size; i++) {
+            HashMap<Integer, ArrayList<String>> tokensByTarget = findTransitions(fsa, i);
+            for (int j = 0; j < size; j++) {
+                steps[i][j] = getRegExp(factory, tokensByTarget.get(j), i == j);
+            }
+        }
+
+        return steps;
+    }
+
+    static RegExp getRegExp(RegExpFactory factory, ArrayList<String> tokens, boolean isLoop) {
+        ArrayList<RegExp> parts = new ArrayList<>();
+
+        if (tokens != null) {
+            tokens.sort(String::compareTo);
+            for (String token : tokens) {
+                parts.add(factory.symbol(token));
+            }
+        }
+
+        if (isLoop) {
+            parts.add(factory.epsilon());
+        }
+
+        if (parts.isEmpty()) {
+            return factory.emptySet();
+        }
+
+        return parts.size() == 1 ? parts.get(0) : factory.union(parts);
+    }
+
+    /**
+     * Get names of the transition tokens from the state, grouped by the destination state
+     */
+    private HashMap<Integer, ArrayList<String>> findTransitions(IndexedFSA fsa, int state) {
+        HashMap<Integer, ArrayList<String>> trans = new HashMap<>();
+
+        for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+            trans.computeIfAbsent(fsa.getTarget(t), target -> new ArrayList<>())
+                    .add(fsa.getSymbolName(fsa.getSymbol(t)));
+        }
+
+        return trans;
+    }
+}
+
+/**
+ * Demand-driven evaluation of Kleene's recurrence for the arbitrary pairs of states. Cell R^k_ij is
+ * computed only if some query needs it, and every computed cell is memoized, so the queries on one
+ * FSA share the work. The cells are the same nodes as in {@link KleeneAlgorithm}, so R^n_ij has the
+ * same text as the cell of the full computation. Query is not thread-safe.
+ */
+class KleeneQuery {
+    private final IndexedFSA fsa;
+    private final RegExpFactory factory;
+    private final boolean simplify;
+    /**
+     * Memoized cells: key (k * n + i) * n + j, where k = 0 is the initial step
+     */
+    private final HashMap<Long, RegExp> cells = new HashMap<>();
+
+    /**
+     * @param fsa      valid FSA
+     * @param factory  factory of the cells; with {@link SimplifyingRegExpFactory} cells after {} are not needed
+     */
+    KleeneQuery(IndexedFSA fsa, RegExpFactory factory) {
+        this.fsa = fsa;
+        this.factory = factory;
+        this.simplify = factory instanceof SimplifyingRegExpFactory;
+    }
+
+    /**
+     * Get RegExp of the paths from the source state to the target states
+     *
+     * @param source  name of the source state
+     * @param targets names of the target states
+     * @return union of the final cells R^n_{source,target} in the order of targets
+     * @throws IllegalArgumentException if there is no state with some name
+     */
+    public RegExp query(String source, String... targets) {
+        int[] targetIndexes = new int[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            targetIndexes[i] = getStateIndex(targets[i]);
+        }
+        return query(getStateIndex(source), targetIndexes);
+    }
+
+    /**
+     * Get RegExp of the paths from the source state to the target states
+     *
+     * @param source  index of the source state
+     * @param targets indexes of the target states
+     * @return union of the final cells R^n_{source,target} in the order of targets; {} if there are no targets
+     */
+    public RegExp query(int source, int[] targets) {
+        ArrayList<RegExp> finalCells = new ArrayList<>();
+        for (int target : targets) {
+            finalCells.add(getCell(source, target));
+        }
+
+        if (finalCells.isEmpty()) {
+            return factory.emptySet();
+        }
+        return factory.union(finalCells);
+    }
+
+    /**
+     * Get the final cell R^n_ij: RegExp of all paths from state i to state j
+     */
+    public RegExp getCell(int i, int j) {
+        return getCell(fsa.getStatesCount(), i, j);
+    }
+
+    /**
+     * Get the number of the memoized cells
+     */
+    public int getComputedCellsCount() {
+        return cells.size();
+    }
+
+    private int getStateIndex(String name) {
+        int index = fsa.getStateIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown state: " + name);
+        }
+        return index;
+    }
+
+    private long key(int k, int i, int j) {
+        long n = fsa.getStatesCount();
+        return (k * n + i) * n + j;
+    }
+
+    /**
+     * Get cell R^k_ij. Dependencies are resolved by the explicit stack, since the depth of the
+     * recursion would be the number of states.
+     */
+    private RegExp getCell(int k, int i, int j) {
+        RegExp cached = cells.get(key(k, i, j));
+        if (cached != null) {
+            return cached;
+        }
+
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{k, i, j});
+        while (!stack.isEmpty()) {
+            int[] cell = stack.peek();
+            long cellKey = key(cell[0], cell[1], cell[2]);
+            if (cells.containsKey(cellKey)) {
+                stack.pop();
+                continue;
+            }
+
+            RegExp value = compute(cell[0], cell[1], cell[2], stack);
+            if (value != null) {
+                cells.put(cellKey, value);
+                stack.pop();
+            }
+        }
+
+        return cells.get(key(k, i, j));
+    }
+
+    /**
+     * Compute cell R^k_ij, if its dependencies are ready; otherwise, push the missing ones to the stack
+     *
+     * @return value of the cell; null if some dependencies are missing
+     */
+    private RegExp compute(int k, int i, int j, ArrayDeque<int[]> stack) {
+        if (k == 0) {
+            return initialCell(i, j);
+        }
+
+        // R^k_ij = (R^{k-1}_ip)(R^{k-1}_pp)*(R^{k-1}_pj)|(R^{k-1}_ij), where p = k - 1 is the pivot state
+        int p = k - 1;
+        RegExp ip = require(p, i, p, stack);
+        RegExp pj = require(p, p, j, stack);
+        if (ip == null || pj == null) {
+            return null;
+        }
+
+        // With the simplification concatenation with {} is {}, so the cell is just R^{k-1}_ij
+        boolean throughPivot = !simplify
+                || (ip.getKind() != RegExp.Kind.EMPTY_SET && pj.getKind() != RegExp.Kind.EMPTY_SET);
+        RegExp pp = throughPivot ? require(p, p, p, stack) : null;
+        RegExp ij = require(p, i, j, stack);
+        if ((throughPivot && pp == null) || ij == null) {
+            return null;
+        }
+
+        return throughPivot ? factory.union(factory.concat(ip, factory.star(pp), pj), ij) : ij;
+    }
+
+    private RegExp require(int k, int i, int j, ArrayDeque<int[]> stack) {
+        RegExp value = cells.get(key(k, i, j));
+        if (value == null) {
+            stack.push(new int[]{k, i, j});
+        }
+        return value;
+    }
+
+    /**
+     * Cell of the initial step, the same as in {@link KleeneAlgorithm}: tokens from i to j and eps for the loop
+     */
+    private RegExp initialCell(int i, int j) {
+        ArrayList<String> tokens = new ArrayList<>();
+        for (int t = fsa.getTransitionsBegin(i); t < fsa.getTransitionsEnd(i); t++) {
+            if (fsa.getTarget(t) == j) {
+                tokens.add(fsa.getSymbolName(fsa.getSymbol(t)));
+            }
+        }
+        return KleeneAlgorithm.getRegExp(factory, tokens, i == j);
+    }
+}
+
+/**
+ * Session of Kleene's algorithm for the FSA, which is edited by appending states and transitions. All layers
+ * R^0..R^n are kept between the edits, so only the cells, which depend on the edit, are computed again:
+ * <ul>
+ *     <li>appended state q - its row and column in each layer, and the whole layers of the pivots from q on;</li>
+ *     <li>transition i > a > j - cell R^k_ij in the layers of the pivots below min(i, j), and the whole layers
+ *     of the pivots from min(i, j) on.</li>
+ * </ul>
+ * The initial and accepting states change only the union of the final cells. The cells are the same nodes as in
+ * {@link KleeneAlgorithm}, so the result has the same text as the full computation of the edited FSA. Layers take
+ * O(n^3) references, and the factory keeps the nodes of the replaced cells. Session is not thread-safe.
+ */
+class KleeneSession {
+    private final RegExpFactory factory;
+    private final boolean simplify;
+    private final HashMap<String, Integer> stateIndexes = new HashMap<>();
+    private final ArrayList<String> stateNames = new ArrayList<>();
+    /**
+     * Tokens of the transitions from each state, grouped by the destination state
+     */
+    private final ArrayList<HashMap<Integer, ArrayList<String>>> transitions = new ArrayList<>();
+    private int initialState = -1;
+    private final ArrayList<Integer> acceptingStates = new ArrayList<>();
+
+    /**
+     * Layer k is R^k, computed with the pivots 0..k-1. Matrices have the spare capacity for the appended states.
+     */
+    private final ArrayList<RegExp[][]> layers = new ArrayList<>();
+    private int capacity = 0;
+    /**
+     * Number of states, for which the layers are computed
+     */
+    private int computedStatesCount = 0;
+    /**
+     * Layers from this one on are computed again entirely
+     */
+    private int dirtyLayer = 1;
+    /**
+     * Cells of R^0 between the computed states, which are changed by the new transitions; key (i << 32) | j
+     */
+    private final LinkedHashSet<Long> dirtyCells = new LinkedHashSet<>();
+    private long lastComputedCellsCount = 0;
+
+    /**
+     * @param factory factory of the cells (see {@link KleeneAlgorithm#session(FSA)})
+     */
+    KleeneSession(RegExpFactory factory) {
+        this.factory = factory;
+        this.simplify = factory instanceof SimplifyingRegExpFactory;
+    }
+
+    /**
+     * Append the new state. It is the last state in the order of Kleene's algorithm.
+     *
+     * @param name name of the state
+     * @return index of the state
+     * @throws IllegalArgumentException if there is the state with this name
+     */
+    public int addState(String name) {
+        if (stateIndexes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate state: " + name);
+        }
+
+        stateIndexes.put(name, stateNames.size());
+        stateNames.add(name);
+        transitions.add(new HashMap<>());
+        return stateNames.size() - 1;
+    }
+
+    /**
+     * Append the transition source > token > target
+     *
+     * @throws IllegalArgumentException if there is no state with some name
+     */
+    public void addTransition(String source, String token, String target) {
+        int i = getStateIndex(source);
+        int j = getStateIndex(target);
+        transitions.get(i).computeIfAbsent(j, state -> new ArrayList<>()).add(token);
+
+        // Cells of the appended states are computed anyway
+        if (i < computedStatesCount && j < computedStatesCount) {
+            dirtyCells.add(((long) i << 32) | j);
+            dirtyLayer = Math.min(dirtyLayer, Math.min(i, j) + 1);
+        }
+    }
+
+    public void setInitialState(String name) {
+        initialState = getStateIndex(name);
+    }
+
+    public void addAcceptingState(String name) {
+        int state = getStateIndex(name);
+        if (!acceptingStates.contains(state)) {
+            acceptingStates.add(state);
+        }
+    }
+
+    public int getStatesCount() {
+        return stateNames.size();
+    }
+
+    /**
+     * Get final accepted by the edited FSA RegExp. Only the cells changed since the previous call are computed.
+     *
+     * @return root node, which text is the same as {@link KleeneAlgorithm#getFinalRegExpNode(FSA)}
+     * @throws IllegalStateException if the initial state is not set
+     */
+    public RegExp getFinalRegExpNode() {
+        if (initialState < 0) {
+            throw new IllegalStateException("Initial state is not defined");
+        }
+
+        update();
+        RegExp[] row = layers.get(computedStatesCount)[initialState];
+        ArrayList<RegExp> acceptedCells = new ArrayList<>();
+        for (int finalState : acceptingStates) {
+            acceptedCells.add(row[finalState]);
+        }
+
+        if (acceptedCells.isEmpty()) {
+            return factory.emptySet();
+        }
+        return factory.union(acceptedCells);
+    }
+
+    /**
+     * Get the final cell R^n_ij: RegExp of all paths from state i to state j
+     */
+    public RegExp getCell(int i, int j) {
+        update();
+        return layers.get(computedStatesCount)[i][j];
+    }
+
+    /**
+     * Get the number of the cells computed by the last update of the layers
+     */
+    public long getLastComputedCellsCount() {
+        return lastComputedCellsCount;
+    }
+
+    private int getStateIndex(String name) {
+        Integer index = stateIndexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown state: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * Bring the layers up to date with the edits. Below the dirty layer the cell R^k_ij depends only on the
+     * cells of the same coordinates and the ones of the pivot, which are not changed there, so exactly the
+     * changed cells and the cells of the appended states are computed again.
+     */
+    private void update() {
+        int n = stateNames.size();
+        int oldN = computedStatesCount;
+        if (n == oldN && dirtyCells.isEmpty()) {
+            return;
+        }
+
+        ensureCapacity(n);
+        while (layers.size() <= n) {
+            layers.add(new RegExp[capacity][]);
+        }
+        for (RegExp[][] layer : layers) {
+            for (int i = 0; i < n; i++) {
+                if (layer[i] == null) {
+                    layer[i] = new RegExp[capacity];
+                }
+            }
+        }
+        lastComputedCellsCount = 0;
+
+        RegExp[][] initial = layers.get(0);
+        for (long cell : dirtyCells) {
+            computeInitialCell(initial, (int) (cell >>> 32), (int) cell);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i < oldN ? oldN : 0; j < n; j++) {
+                computeInitialCell(initial, i, j);
+            }
+        }
+
+        for (int k = 1; k <= n; k++) {
+            RegExp[][] previous = layers.get(k - 1);
+            RegExp[][] layer = layers.get(k);
+            int p = k - 1;
+            RegExp starPP = factory.star(previous[p][p]);
+
+            if (k >= dirtyLayer || k > oldN) {
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < n; j++) {
+                        computeCell(previous, layer, p, starPP, i, j);
+                    }
+                }
+                continue;
+            }
+
+            for (long cell : dirtyCells) {
+                computeCell(previous, layer, p, starPP, (int) (cell >>> 32), (int) cell);
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = i < oldN ? oldN : 0; j < n; j++) {
+                    computeCell(previous, layer, p, starPP, i, j);
+                }
+            }
+        }
+
+        dirtyCells.clear();
+        computedStatesCount = n;
+        dirtyLayer = n + 1;
+    }
+
+    private void computeInitialCell(RegExp[][] initial, int i, int j) {
+        initial[i][j] = KleeneAlgorithm.getRegExp(factory, transitions.get(i).get(j), i == j);
+        lastComputedCellsCount++;
+    }
+
+    private void computeCell(RegExp[][] previous, RegExp[][] layer, int p, RegExp starPP, int i, int j) {
+        RegExp ip = previous[i][p];
+        RegExp pj = previous[p][j];
+        // With the simplification concatenation with {} is {}, so the cell is just R^{k-1}_ij
+        if (simplify && (ip.getKind() == RegExp.Kind.EMPTY_SET || pj.getKind() == RegExp.Kind.EMPTY_SET)) {
+            layer[i][j] = previous[i][j];
+        } else {
+            layer[i][j] = KleeneAlgorithm.formatRegExp(factory, ip, starPP, pj, previous[i][j]);
+            lastComputedCellsCount++;
+        }
+    }
+
+    /**
+     * Grow the matrices of all layers twice, so appending of the states costs amortized O(n^2) copies
+     */
+    private void ensureCapacity(int size) {
+        if (size <= capacity) {
+            return;
+        }
+
+        capacity = Math.max(size, capacity * 2);
+        for (int k = 0; k < layers.size(); k++) {
+            RegExp[][] layer = Arrays.copyOf(layers.get(k), capacity);
+            for (int i = 0; i < capacity; i++) {
+                if (layer[i] != null) {
+                    layer[i] = Arrays.copyOf(layer[i], capacity);
+                }
+            }
+            layers.set(k, layer);
+        }
+    }
+}
+
+/**
+ * Algorithm, which converts the valid FSA into the RegExp accepted by it.
+ */
+interface ConversionEngine extends Closeable {
+    /**
+     * Get RegExp accepted by given FSA as the root of the RegExp DAG.
+     * @param fsa for which will be found RegExp
+     * @return root node of the RegExp, accepted by FSA.
+     */
+    RegExp getFinalRegExpNode(FSA fsa);
+
+    /**
+     * Get RegExp accepted by given FSA, adding the metrics of the algorithm to the stats
+     * @param fsa   for which will be found RegExp
+     * @param stats metrics of the conversion; null - without them
+     * @return root node of the RegExp, accepted by FSA.
+     */
+    default RegExp getFinalRegExpNode(FSA fsa, ConversionStats stats) {
+        return getFinalRegExpNode(fsa);
+    }
+
+    /**
+     * Get the signature of the algorithm and of the options, which change its results
+     * @return signature, e.g. "kleene"
+     */
+    String getSignature();
+
+    /**
+     * Release the threads of the algorithm; the engine must not be used after it
+     */
+    @Override
+    default void close() {
+    }
+}
+
+/**
+ * Class, which represents the state elimination method for understanding the RegExp, which
+ * accepted by given FSA. FSA is extended by the new initial and final states, connected by eps, and
+ * then the original states are eliminated one by one in the order given by {@link EliminationOrder}.
+ * Only present edges are stored, so {} appears in the result only if FSA accepts nothing, and the
+ * labels are simplified by {@link SimplifyingRegExpFactory}.
+ */
+class StateEliminationAlgorithm implements ConversionEngine {
+    /**
+     * Heuristic, which chooses the next state for the elimination
+     */
+    enum EliminationOrder {
+        /**
+         * States in the order of declaration, as in Kleene's algorithm
+         */
+        DECLARATION,
+        /**
+         * State with the fewest pairs of incoming and outgoing edges first
+         */
+        FEWEST_EDGES,
+        /**
+         * State with the smallest weight first: total length of the RegExps, which its elimination adds
+         */
+        WEIGHT
+    }
+
+    private final EliminationOrder order;
+
+    StateEliminationAlgorithm(EliminationOrder order) {
+        this.order = order;
+    }
+
+    @Override
+    public String getSignature() {
+        return "elimination-" + order.name().toLowerCase();
+    }
+
+    @Override
+    public RegExp getFinalRegExpNode(FSA fsa) {
+        RegExpFactory factory = new SimplifyingRegExpFactory();
+        IndexedFSA indexed = fsa.getIndexed();
+        int size = indexed.getStatesCount();
+        int start = size;
+        int end = size + 1;
+
+        // Edges of the generalized FSA: from -> (to -> label)
+        ArrayList<TreeMap<Integer, RegExp>> out = new ArrayList<>();
+        ArrayList<TreeMap<Integer, RegExp>> in = new ArrayList<>();
+        for (int i = 0; i < size + 2; i++) {
+            out.add(new TreeMap<>());
+            in.add(new TreeMap<>());
+        }
+
+        addEdge(factory, out, in, start, indexed.getInitialState(), factory.epsilon());
+        for (int finalState : indexed.getAcceptingStates()) {
+            addEdge(factory, out, in, finalState, end, factory.epsilon());
+        }
+        for (int i = 0; i < size; i++) {
+            // Tokens of each edge are added in the lexicographical order
+            TreeMap<Integer, ArrayList<String>> tokensByTarget = new TreeMap<>();
+            for (int t = indexed.getTransitionsBegin(i); t < indexed.getTransitionsEnd(i); t++) {
+                tokensByTarget.computeIfAbsent(indexed.getTarget(t), target -> new ArrayList<>())
+                        .add(indexed.getSymbolName(indexed.getSymbol(t)));
+            }
+
+            for (Map.Entry<Integer, ArrayList<String>> edge : tokensByTarget.entrySet()) {
+                edge.getValue().sort(String::compareTo);
+                for (String token : edge.getValue()) {
+                    addEdge(factory, out, in, i, edge.getKey(), factory.symbol(token));
+                }
+            }
+        }
+
+        boolean[] eliminated = new boolean[size];
+        for (int step = 0; step < size; step++) {
+            int state = nextState(out, in, eliminated);
+            eliminate(factory, out, in, state);
+            eliminated[state] = true;
+        }
+
+        RegExp result = out.get(start).get(end);
+        return result == null ? factory.emptySet() : result;
+    }
+
+    private int nextState(ArrayList<TreeMap<Integer, RegExp>> out, ArrayList<TreeMap<Integer, RegExp>> in,
+                          boolean[] eliminated) {
+        int best = -1;
+        long bestCost = Long.MAX_VALUE;
+
+        for (int state = 0; state < eliminated.length; state++) {
+            if (eliminated[state]) {
+                continue;
+            }
+            if (order == EliminationOrder.DECLARATION) {
+                return state;
+            }
+
+            long cost = order == EliminationOrder.FEWEST_EDGES
+                    ? (long) degree(in.get(state), state) * degree(out.get(state), state)
+                    : weight(out, in, state);
+            if (cost < bestCost) {
+                best = state;
+                bestCost = cost;
+            }
+        }
+
+        return best;
+    }
+
+    private int degree(TreeMap<Integer, RegExp> edges, int state) {
+        return edges.size() - (edges.containsKey(state) ? 1 : 0);
+    }
+
+    /**
+     * Weight of the state: how much the total length of the labels grows after its elimination.
+     * Each incoming label is copied for every outgoing edge and vice versa, the loop - for every pair.
+     */
+    private long weight(ArrayList<TreeMap<Integer, RegExp>> out, ArrayList<TreeMap<Integer, RegExp>> in, int state) {
+        int inDegree = degree(in.get(state), state);
+        int outDegree = degree(out.get(state), state);
+        long weight = 0;
+
+        for (Map.Entry<Integer, RegExp> edge : in.get(state).entrySet()) {
+            if (edge.getKey() != state) {
+                weight += edge.getValue().getLength(RegExp.Notation.MINIMAL) * (outDegree - 1);
+            }
+        }
+        for (Map.Entry<Integer, RegExp> edge : out.get(state).entrySet()) {
+            if (edge.getKey() != state) {
+                weight += edge.getValue().getLength(RegExp.Notation.MINIMAL) * (inDegree - 1);
+            }
+        }
+
+        RegExp loop = out.get(state).get(state);
+        if (loop != null) {
+            weight += loop.getLength(RegExp.Notation.MINIMAL) * ((long) inDegree * outDegree - 1);
+        }
+
+        return weight;
+    }
+
+    /**
+     * Remove the state and replace each path p -> state -> r by the edge p -> r labeled by
+     * (p, state)(loop)*(state, r)
+     */
+    private void eliminate(RegExpFactory factory, ArrayList<TreeMap<Integer, RegExp>> out,
+                           ArrayList<TreeMap<Integer, RegExp>> in, int state) {
+        RegExp loop = out.get(state).remove(state);
+        in.get(state).remove(state);
+        RegExp star = loop == null ? factory.epsilon() : factory.star(loop);
+
+        for (Map.Entry<Integer, RegExp> incoming : in.get(state).entrySet()) {
+            int p = incoming.getKey();
+            out.get(p).remove(state);
+
+            for (Map.Entry<Integer, RegExp> outgoing : out.get(state).entrySet()) {
+                addEdge(factory, out, in, p, outgoing.getKey(),
+                        factory.concat(incoming.getValue(), star, outgoing.getValue()));
+            }
+        }
+        for (Integer r : out.get(state).keySet()) {
+            in.get(r).remove(state);
+        }
+
+        out.get(state).clear();
+        in.get(state).clear();
+    }
+
+    /**
+     * Add the alternative to the label of the edge
+     */
+    private void addEdge(RegExpFactory factory, ArrayList<TreeMap<Integer, RegExp>> out,
+                         ArrayList<TreeMap<Integer, RegExp>> in, int from, int to, RegExp label) {
+        RegExp existing = out.get(from).get(to);
+        RegExp result = existing == null ? label : factory.union(existing, label);
+
+        out.get(from).put(to, result);
+        in.get(to).put(from, result);
+    }
+}
+
+/**
+ * Node of the RegExp DAG. Nodes are immutable and must be created only by {@link RegExpFactory},
+ * so structurally equal nodes are always the same object and the subterms are shared.
+ * <p>
+ * Text of the node follows the format of the task:
+ * <ul>
+ *     <li>{} - empty set, eps - epsilon, symbol - its name;</li>
+ *     <li>union of atoms (symbols and eps) - alternatives without parentheses (e.g. a|b|eps);</li>
+ *     <li>any other union - each alternative in parentheses, except concatenations;</li>
+ *     <li>concatenation - each part in parentheses, except stars;</li>
+ *     <li>star - operand in parentheses with the trailing '*'.</li>
+ * </ul>
+ * The same node can be printed in the minimal notation too, where the parentheses are used only
+ * when the precedence of the operators requires them or around the atoms longer than one char
+ * (e.g. a(b|eps)*(c_1)).
+ */
+final class RegExp {
+    enum Kind {
+        EMPTY_SET, EPSILON, SYMBOL, UNION, CONCAT, STAR
+    }
+
+    /**
+     * Notation of the text: literal notation of the task or notation with the minimal parentheses
+     */
+    enum Notation {
+        LITERAL, MINIMAL
+    }
+
+    private static final RegExp[] NO_CHILDREN = new RegExp[0];
+
+    private final Kind kind;
+    private final String symbol;
+    private final RegExp[] children;
+    private final int hash;
+    /**
+     * Length of the text of the node. Long, because the text can be much bigger than any String.
+     * Lengths, which do not fit into long, are saturated to {@link Long#MAX_VALUE} (see {@link #getExactLength}).
+     */
+    private final long length;
+    private final long minimalLength;
+
+    RegExp(Kind kind, String symbol, RegExp[] children) {
+        this.kind = kind;
+        this.symbol = symbol;
+        this.children = children == null ? NO_CHILDREN : children;
+
+        int h = kind.ordinal() * 31 + (symbol == null ? 0 : symbol.hashCode());
+        for (RegExp child : this.children) {
+            h = mix(h * 31 + child.hash);
+        }
+        this.hash = h;
+        this.length = computeLength(Notation.LITERAL);
+        this.minimalLength = computeLength(Notation.MINIMAL);
+    }
+
+    /**
+     * Finalizer of MurmurHash3. Plain polynomial hash of the children collides on the nodes, which differ only
+     * by the nesting (e.g. the cells of chain FSAs), and the collisions turn the bins of the factory into trees.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getChildrenCount() {
+        return children.length;
+    }
+
+    public RegExp getChild(int index) {
+        return children[index];
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLength(Notation notation) {
+        return notation == Notation.LITERAL ? length : minimalLength;
+    }
+
+    /**
+     * Get the exact length of the text without building it. The text of the DAG can be exponentially
+     * longer than the number of its nodes, so the saturated lengths are recounted by BigInteger.
+     *
+     * @param notation notation of the text
+     * @return length of the text in chars (and in bytes, since the text is ASCII)
+     */
+    public BigInteger getExactLength(Notation notation) {
+        if (getLength(notation) < Long.MAX_VALUE) {
+            return BigInteger.valueOf(getLength(notation));
+        }
+
+        // Post-order traversal of the saturated part of the DAG
+        IdentityHashMap<RegExp, BigInteger> lengths = new IdentityHashMap<>();
+        ArrayDeque<RegExp> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            RegExp node = stack.peek();
+            if (lengths.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+
+            boolean ready = true;
+            for (RegExp child : node.children) {
+                if (child.getLength(notation) == Long.MAX_VALUE && !lengths.containsKey(child)) {
+                    stack.push(child);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+
+            stack.pop();
+            BigInteger result = BigInteger.valueOf(node.kind == Kind.STAR ? 1 : 0);
+            for (RegExp child : node.children) {
+                BigInteger childLength = child.getLength(notation) == Long.MAX_VALUE
+                        ? lengths.get(child) : BigInteger.valueOf(child.getLength(notation));
+                result = result.add(childLength).add(BigInteger.valueOf(node.isParenthesized(child, notation) ? 2 : 0));
+            }
+            if (node.kind == Kind.UNION) {
+                result = result.add(BigInteger.valueOf(node.children.length - 1));
+            }
+            lengths.put(node, result);
+        }
+
+        return lengths.get(this);
+    }
+
+    public boolean isAtom() {
+        return kind == Kind.EMPTY_SET || kind == Kind.EPSILON || kind == Kind.SYMBOL;
+    }
+
+    /**
+     * List the unique nodes of the DAG of this node, children before the parents
+     *
+     * @return nodes in the post-order; this node is the last one
+     */
+    public ArrayList<RegExp> getUniqueNodes() {
+        ArrayList<RegExp> nodes = new ArrayList<>();
+        IdentityHashMap<RegExp, Boolean> visited = new IdentityHashMap<>();
+        ArrayDeque<RegExp> stack = new ArrayDeque<>();
+        stack.push(this);
+
+        while (!stack.isEmpty()) {
+            RegExp node = stack.peek();
+            if (visited.containsKey(node)) {
+                stack.pop();
+                if (!visited.get(node)) {
+                    visited.put(node, true);
+                    nodes.add(node);
+                }
+                continue;
+            }
+
+            visited.put(node, false);
+            for (int i = node.children.length - 1; i >= 0; i--) {
+                if (!visited.containsKey(node.children[i])) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Check if the child of this node should be surrounded by parentheses in the text
+     *
+     * @param child    one of the children of this node
+     * @param notation notation of the text
+     * @return true - if parentheses are needed; Otherwise, false
+     */
+    boolean isParenthesized(RegExp child, Notation notation) {
+        if (notation == Notation.MINIMAL) {
+            // Atoms longer than one char are surrounded too, so "(ab)c" is not confused with "a(bc)"
+            boolean isLongAtom = child.isAtom() && child.length > 1;
+            return switch (kind) {
+                case CONCAT -> child.kind == Kind.UNION || isLongAtom;
+                case STAR -> !child.isAtom() || isLongAtom;
+                default -> false;
+            };
+        }
+
+        return switch (kind) {
+            case UNION -> child.kind != Kind.CONCAT && !isUnionOfAtoms();
+            case CONCAT -> child.kind != Kind.STAR;
+            case STAR -> true;
+            default -> false;
+        };
+    }
+
+    private boolean isUnionOfAtoms() {
+        for (RegExp child : children) {
+            if (!child.isAtom()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long computeLength(Notation notation) {
+        switch (kind) {
+            case EMPTY_SET:
+            case EPSILON:
+            case SYMBOL:
+                return getAtomText().length();
+            default:
+                long result = kind == Kind.STAR ? 1 : 0;
+                for (RegExp child : children) {
+                    result = saturatedAdd(saturatedAdd(result, child.getLength(notation)),
+                            isParenthesized(child, notation) ? 2 : 0);
+                }
+                if (kind == Kind.UNION) {
+                    result = saturatedAdd(result, children.length - 1);
+                }
+                return result;
+        }
+    }
+
+    /**
+     * Sum of the non-negative lengths, saturated to Long.MAX_VALUE on the overflow
+     */
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    String getAtomText() {
+        return switch (kind) {
+            case EMPTY_SET -> "{}";
+            case EPSILON -> "eps";
+            case SYMBOL -> symbol;
+            default -> throw new IllegalStateException("Node " + kind + " is not an atom");
+        };
+    }
+
+    /**
+     * Append text of the node to the builder
+     *
+     * @param builder  destination of the text
+     * @param notation notation of the text
+     */
+    public void appendTo(StringBuilder builder, Notation notation) {
+        if (isAtom()) {
+            builder.append(getAtomText());
+            return;
+        }
+
+        for (int i = 0; i < children.length; i++) {
+            if (kind == Kind.UNION && i > 0) {
+                builder.append('|');
+            }
+
+            RegExp child = children[i];
+            if (isParenthesized(child, notation)) {
+                builder.append('(');
+                child.appendTo(builder, notation);
+                builder.append(')');
+            } else {
+                child.appendTo(builder, notation);
+            }
+        }
+
+        if (kind == Kind.STAR) {
+            builder.append('*');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(Notation.LITERAL);
+    }
+
+    public String toString(Notation notation) {
+        StringBuilder builder = new StringBuilder((int) Math.min(getLength(notation), Integer.MAX_VALUE - 8));
+        appendTo(builder, notation);
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RegExp other) || hash != other.hash || kind != other.kind
+                || children.length != other.children.length) {
+            return false;
+        }
+        if (symbol == null ? other.symbol != null : !symbol.equals(other.symbol)) {
+            return false;
+        }
+
+        // Children are already hash-consed, so the identity comparison is enough
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] != other.children[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
+
+/**
+ * Writer, which streams the text of the RegExp DAG into the channels through one fixed-size buffer.
+ * The whole text is never built in memory, so the peak memory is bounded by the buffer size.
+ */
+class RegExpWriter {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final ByteBuffer buffer;
+    private final RegExp.Notation notation;
+    private final WritableByteChannel[] channels;
+
+    RegExpWriter(WritableByteChannel... channels) {
+        this(RegExp.Notation.LITERAL, channels);
+    }
+
+    RegExpWriter(RegExp.Notation notation, WritableByteChannel... channels) {
+        this(DEFAULT_BUFFER_SIZE, notation, channels);
+    }
+
+    RegExpWriter(int bufferSize, RegExp.Notation notation, WritableByteChannel... channels) {
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.notation = notation;
+        this.channels = channels;
+    }
+
+    /**
+     * Write text of the RegExp. The same text as {@link RegExp#toString(RegExp.Notation)} will be written.
+     *
+     * @param regExp node to write
+     * @throws IOException if some of the channels cannot be written
+     */
+    public void write(RegExp regExp) throws IOException {
+        write(regExp, null);
+    }
+
+    /**
+     * Write the RegExp in the format of definitions. Each node, which is not an atom and is used more
+     * than once, is written once as the line "${N} = text", where the text refers to the other definitions
+     * by their names ${N}, and the last line is the text of the root without the line feed. Definitions go
+     * before their uses, so the output is linear in the nodes of the DAG, while the flat text can be
+     * exponential. Substitution of the definitions restores the flat text (see {@link DefinitionsExpander}).
+     *
+     * @param root root of the RegExp
+     * @throws IOException if some of the channels cannot be written
+     */
+    public void writeDefinitions(RegExp root) throws IOException {
+        ArrayList<RegExp> nodes = root.getUniqueNodes();
+        IdentityHashMap<RegExp, Integer> uses = new IdentityHashMap<>();
+        for (RegExp node : nodes) {
+            for (int i = 0; i < node.getChildrenCount(); i++) {
+                uses.merge(node.getChild(i), 1, Integer::sum);
+            }
+        }
+
+        IdentityHashMap<RegExp, Integer> names = new IdentityHashMap<>();
+        for (RegExp node : nodes) {
+            if (!node.isAtom() && uses.getOrDefault(node, 0) > 1) {
+                write(DefinitionsExpander.getName(names.size() + 1) + DefinitionsExpander.SEPARATOR);
+                write(node, names);
+                write('\n');
+                names.put(node, names.size() + 1);
+            }
+        }
+
+        write(root, names);
+    }
+
+    /**
+     * Write text of the RegExp, where the children with the names are replaced by the names
+     *
+     * @param names names of the definitions; null - without definitions
+     */
+    private void write(RegExp regExp, IdentityHashMap<RegExp, Integer> names) throws IOException {
+        if (regExp.isAtom()) {
+            write(regExp.getAtomText());
+            return;
+        }
+
+        for (int i = 0; i < regExp.getChildrenCount(); i++) {
+            if (regExp.getKind() == RegExp.Kind.UNION && i > 0) {
+                write('|');
+            }
 
-                sourceState.addPossibleTransition(destState, trans);
+            RegExp child = regExp.getChild(i);
+            boolean parenthesized = regExp.isParenthesized(child, notation);
+            if (parenthesized) {
+                write('(');
+            }
+            Integer name = names == null ? null : names.get(child);
+            if (name != null) {
+                write(DefinitionsExpander.getName(name));
+            } else {
+                write(child, names);
             }
-        } catch (IOException | IncorrectStateException | TransitionIsNotPresentedException
-                | InputMalformedException e) {
-            writer.write(e.toString());
-            System.out.println(e.toString());
-            reader.close();
-            writer.close();
-            System.exit(0);
+            if (parenthesized) {
+                write(')');
+            }
+        }
+
+        if (regExp.getKind() == RegExp.Kind.STAR) {
+            write('*');
         }
     }
 
     /**
-     * Get state by its name from set of all possible states
+     * Write the plain text. Text of the input format is pure ASCII, so each char is one byte.
      *
-     * @param stateName name of the state needed state
-     * @return State if presented in set of states; Otherwise, null
+     * @param text text to write
+     * @throws IOException if some of the channels cannot be written
      */
-    private static State getState(String stateName) {
-        for (State state : STATES) {
-            if (state.getName().equals(stateName)) {
-                return state;
-            }
+    public void write(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
         }
-        return null;
     }
 
-    /**
-     * Get transition token by its name from set of all possible transitions
-     *
-     * @param transitionName name of the state needed transition token
-     * @return Transition if presented in set of transitions; Otherwise, null
-     */
-    private static Transition getTransition(String transitionName) {
-        for (Transition transition : ALPHA) {
-            if (transition.name().equals((transitionName))) {
-                return transition;
-            }
+    private void write(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
         }
-        return null;
+        buffer.put((byte) c);
     }
 
     /**
-     * The common driver for all parsing methods of the program.
-     * Parsing provided sequentially by task's conditions.
+     * Write all buffered bytes into every channel
+     *
+     * @throws IOException if some of the channels cannot be written
      */
-    private static void makeFormattedInput() {
-        try {
-            scanStates();
-            scanAlpha();
-            scanInitialState();
-            scanAcceptingStates();
-            scanTransitions();
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-            System.exit(0);
+    public void flush() throws IOException {
+        buffer.flip();
+        for (WritableByteChannel channel : channels) {
+            ByteBuffer chunk = buffer.duplicate();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
         }
+        buffer.clear();
     }
 }
 
 /**
- * The most essential class of the program. Implement all significant tests for the FSA validation
+ * Expander of the format of definitions (see {@link RegExpWriter#writeDefinitions(RegExp)}) back to
+ * the flat text. Each name is replaced by the text of its definition; the flat text is streamed into
+ * the writer, so it is never kept in memory.
  */
-class Checker {
-    private static final int A_ASCII = 65;
-    private static final int Z_ASCII = 90;
-    private static final int a_ASCII = 97;
-    private static final int z_ASCII = 122;
-    private static final int UNDERSCORE_ASCII = 95;
-    private static final int ASCII_0 = 48;
-    private static final int ASCII_9 = 57;
+class DefinitionsExpander {
     /**
-     * Array of states for checking if the FSA disjoint
+     * Names are closed by the suffix, so the digits of the tokens after the name are not taken as its part
      */
-    private static final ArrayList<State> REACHED_STATES = new ArrayList<>();
+    static final String NAME_PREFIX = "${";
+    static final String NAME_SUFFIX = "}";
+    static final String SEPARATOR = " = ";
+
     /**
-     * Array of States which is the same as the original FSA States but without directions;
-     * (e.g. 1 --> 2 now 1 <--> 2)
+     * Text of the definition, split by the references: texts[0] refs[0] texts[1] ... refs[m-1] texts[m]
      */
-    private static final ArrayList<State> UNDIRECTED_STATES = new ArrayList<>();
+    private record Definition(String[] texts, int[] refs) {
+    }
+
+    private DefinitionsExpander() {
+    }
 
     /**
-     * Check if the state name is correct according to task's condition
+     * @param index index of the definition, from 1
+     * @return name of the definition
+     */
+    static String getName(int index) {
+        return NAME_PREFIX + index + NAME_SUFFIX;
+    }
+
+    /**
+     * Expand the definitions and write the flat text of the root
      *
-     * @param name current state name for checking
-     * @return true - if name is correct; Otherwise, false
+     * @param input  file in the format of definitions
+     * @param writer destination of the flat text
+     * @throws IOException              if the file cannot be read or the output cannot be written
+     * @throws IllegalArgumentException if the file has no root or refers to the undefined name
      */
-    public boolean isStateNameCorrect(String name) {
-        for (Character c : name.toCharArray()) {
-            if (!(isLetter(c) || isDigit(c))) {
-                return false;
+    public static void expand(Path input, RegExpWriter writer) throws IOException {
+        ArrayList<Definition> definitions = new ArrayList<>();
+        Definition root = null;
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                String expectedName = getName(definitions.size() + 1) + SEPARATOR;
+                if (line.startsWith(expectedName)) {
+                    definitions.add(parse(line.substring(expectedName.length()), definitions.size()));
+                } else {
+                    root = parse(line, definitions.size());
+                }
+            }
+        }
+        if (root == null) {
+            throw new IllegalArgumentException("There is no root expression in " + input);
+        }
+
+        // Depth-first substitution by the explicit stack: frame = {index of the definition (-1 - root), position}
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{-1, 0});
+        while (!stack.isEmpty()) {
+            int[] frame = stack.peek();
+            Definition definition = frame[0] < 0 ? root : definitions.get(frame[0]);
+            writer.write(definition.texts()[frame[1]]);
+            if (frame[1] < definition.refs().length) {
+                stack.push(new int[]{definition.refs()[frame[1]++] - 1, 0});
+            } else {
+                stack.pop();
             }
         }
-        return true;
     }
 
     /**
-     * Check if the transition token name is correct according to task's condition
-     *
-     * @param name current transition token name for checking
-     * @return true - if name is correct; Otherwise, false
+     * Split the text by the references; only the names defined before can be used, so there are no cycles
      */
-    public boolean isTransitionNameCorrect(String name) {
-        for (Character c : name.toCharArray()) {
-            if (!(isLetter(c) || isDigit(c) || c == UNDERSCORE_ASCII)) {
-                return false;
+    private static Definition parse(String text, int definedCount) {
+        ArrayList<String> texts = new ArrayList<>();
+        ArrayList<Integer> refs = new ArrayList<>();
+
+        int start = 0;
+        int position = text.indexOf(NAME_PREFIX);
+        while (position >= 0) {
+            texts.add(text.substring(start, position));
+            int end = position + NAME_PREFIX.length();
+            while (end < text.length() && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end == position + NAME_PREFIX.length() || !text.startsWith(NAME_SUFFIX, end)) {
+                throw new IllegalArgumentException("Malformed name at: " + text.substring(position));
+            }
+
+            int ref = Integer.parseInt(text.substring(position + NAME_PREFIX.length(), end));
+            if (ref < 1 || ref > definedCount) {
+                throw new IllegalArgumentException("Undefined name: " + getName(ref));
             }
+            refs.add(ref);
+            start = end + NAME_SUFFIX.length();
+            position = text.indexOf(NAME_PREFIX, start);
         }
-        return true;
+        texts.add(text.substring(start));
+
+        return new Definition(texts.toArray(new String[0]), refs.stream().mapToInt(Integer::intValue).toArray());
     }
+}
 
-    private boolean isLetter(Character c) {
-        return (A_ASCII <= c && c <= Z_ASCII) || (a_ASCII <= c && c <= z_ASCII);
+/**
+ * Factory of the hash-consed RegExp nodes. Each structurally unique node is created only once,
+ * all the next requests return the same object. Factory can be used from several threads at once.
+ */
+class RegExpFactory {
+    private final ConcurrentHashMap<RegExp, RegExp> nodes = new ConcurrentHashMap<>();
+    private final RegExp emptySet = intern(new RegExp(RegExp.Kind.EMPTY_SET, null, null));
+    private final RegExp epsilon = intern(new RegExp(RegExp.Kind.EPSILON, null, null));
+
+    public RegExp emptySet() {
+        return emptySet;
     }
 
-    private boolean isDigit(Character c) {
-        return (ASCII_0 <= c && c <= ASCII_9);
+    public RegExp epsilon() {
+        return epsilon;
+    }
+
+    public RegExp symbol(String name) {
+        return intern(new RegExp(RegExp.Kind.SYMBOL, name, null));
+    }
+
+    public RegExp union(RegExp... alternatives) {
+        return intern(new RegExp(RegExp.Kind.UNION, null, alternatives.clone()));
+    }
+
+    public RegExp union(List<RegExp> alternatives) {
+        return intern(new RegExp(RegExp.Kind.UNION, null, alternatives.toArray(new RegExp[0])));
+    }
+
+    public RegExp concat(RegExp... parts) {
+        return intern(new RegExp(RegExp.Kind.CONCAT, null, parts.clone()));
+    }
+
+    public RegExp star(RegExp operand) {
+        return intern(new RegExp(RegExp.Kind.STAR, null, new RegExp[]{operand}));
     }
 
     /**
-     * Check if states are disjoint somehow
+     * Get the node with exactly this structure, without any simplification
      *
-     * @param states       original possible states
-     * @param initialState original initial state
-     * @return true - if states are disjoint; Otherwise, false
+     * @param kind     kind of the node
+     * @param symbol   name of the symbol; null for the other kinds
+     * @param children children of the node
+     * @return hash-consed node
      */
-    public boolean isDisjoint(ArrayList<State> states, State initialState) {
-        createStatesUndirected(states);
-        State initialStateInUndirectedGraph = UNDIRECTED_STATES.get(UNDIRECTED_STATES.indexOf(getState(initialState)));
-        getAllPossibleReachedStates(initialStateInUndirectedGraph);
-        return REACHED_STATES.size() != states.size();
+    public RegExp node(RegExp.Kind kind, String symbol, RegExp[] children) {
+        return intern(new RegExp(kind, symbol, children.clone()));
     }
 
     /**
-     * Create an undirected set of states from origin set of states.
-     * Undirected set will be saved in static variable UNDIRECTED_STATES.
+     * Get the number of unique nodes created by this factory
      *
-     * @param states original set of all possible states
+     * @return number of nodes
      */
-    private void createStatesUndirected(ArrayList<State> states) {
-        // Copy all states from the original set to undirectedStatesSet
-        for (State state : states) {
-            State newState = new State(state.getName());
-            UNDIRECTED_STATES.add(newState);
-        }
+    public int size() {
+        return nodes.size();
+    }
+
+    private RegExp intern(RegExp node) {
+        RegExp existing = nodes.putIfAbsent(node, node);
+        return existing == null ? node : existing;
+    }
+}
+
+/**
+ * Factory, which simplifies each node during the construction by the algebraic identities:
+ * <ul>
+ *     <li>{}r = r{} = {}, r|{} = r, eps r = r eps = r;</li>
+ *     <li>r|r = r, nested unions and concatenations are flattened;</li>
+ *     <li>(r*)* = r*, eps* = {}* = eps, (r|eps)* = r*.</li>
+ * </ul>
+ * Each R^k is built from the already simplified R^(k-1), so the reduction compounds over the steps.
+ */
+class SimplifyingRegExpFactory extends RegExpFactory {
+    @Override
+    public RegExp union(RegExp... alternatives) {
+        return union(Arrays.asList(alternatives));
+    }
 
-        // Implement old transitions between states in the new field on undirectedStatesSet.
-        // (Transitions were obtained from the original states transitions)
-        for (State state : states) {
-            for (State stateInner : state.getPossibleStatesToMove()) {
-                UNDIRECTED_STATES.get(UNDIRECTED_STATES.indexOf(getState(state))).addPossibleTransition(
-                        UNDIRECTED_STATES.get(UNDIRECTED_STATES.indexOf(getState(stateInner))), null
-                );
+    @Override
+    public RegExp union(List<RegExp> alternatives) {
+        LinkedHashSet<RegExp> result = new LinkedHashSet<>();
+        for (RegExp alternative : alternatives) {
+            if (alternative.getKind() == RegExp.Kind.UNION) {
+                for (int i = 0; i < alternative.getChildrenCount(); i++) {
+                    result.add(alternative.getChild(i));
+                }
+            } else if (alternative.getKind() != RegExp.Kind.EMPTY_SET) {
+                result.add(alternative);
             }
         }
 
-        // Implement addition transition from [tail_state] to [head_state].
-        // (e.g. [original set = (1: 2, 3; 2: ; 3: ); new set = (1: 2, 3; 2: 1 ; 3: 1)])
-        for (State state : UNDIRECTED_STATES) {
-            ArrayList<State> tempList = (ArrayList<State>) state.getPossibleStatesToMove().clone();
-            for (State innerState : tempList) {
-                innerState.addPossibleTransition(state, null);
+        if (result.isEmpty()) {
+            return emptySet();
+        }
+        return result.size() == 1 ? result.iterator().next() : super.union(new ArrayList<>(result));
+    }
+
+    @Override
+    public RegExp concat(RegExp... parts) {
+        ArrayList<RegExp> result = new ArrayList<>();
+        for (RegExp part : parts) {
+            switch (part.getKind()) {
+                case EMPTY_SET:
+                    return emptySet();
+                case EPSILON:
+                    break;
+                case CONCAT:
+                    for (int i = 0; i < part.getChildrenCount(); i++) {
+                        result.add(part.getChild(i));
+                    }
+                    break;
+                default:
+                    result.add(part);
             }
         }
 
-        // Delete duplicates of states in every array of possible transitions from each state
-        for (State state : UNDIRECTED_STATES) {
-            state.setPossibleStatesToMove(new ArrayList<>(
-                    state.getPossibleStatesToMove().stream().distinct().toList()
-            ));
+        if (result.isEmpty()) {
+            return epsilon();
+        }
+        return result.size() == 1 ? result.get(0) : super.concat(result.toArray(new RegExp[0]));
+    }
+
+    @Override
+    public RegExp star(RegExp operand) {
+        switch (operand.getKind()) {
+            case EMPTY_SET:
+            case EPSILON:
+                return epsilon();
+            case STAR:
+                return operand;
+            case UNION:
+                // (r|eps)* = r*
+                ArrayList<RegExp> alternatives = new ArrayList<>();
+                for (int i = 0; i < operand.getChildrenCount(); i++) {
+                    if (operand.getChild(i).getKind() != RegExp.Kind.EPSILON) {
+                        alternatives.add(operand.getChild(i));
+                    }
+                }
+                if (alternatives.size() != operand.getChildrenCount()) {
+                    return star(union(alternatives));
+                }
+                return super.star(operand);
+            default:
+                return super.star(operand);
         }
     }
+}
+
+/**
+ * Hash table with open addressing, which interns names to ints in the order of addition.
+ * Names can be searched by the ASCII bytes, so the search does not create Strings.
+ */
+final class NameTable {
+    private final ArrayList<String> names = new ArrayList<>();
+    /**
+     * Index of the name + 1 in each slot; 0 - empty slot
+     */
+    private int[] slots = new int[16];
 
     /**
-     * Get state from the undirected set of states
+     * Add the name. Repeated name gets the new index, but the search returns the first one.
      *
-     * @param state needed state
-     * @return State - if state is found; Otherwise, false
+     * @param name name to add
+     * @return index of the added name
      */
-    private State getState(State state) {
-        for (State stateUnd : UNDIRECTED_STATES) {
-            if (stateUnd.getName().equals(state.getName())) {
-                return stateUnd;
+    public int add(String name) {
+        names.add(name);
+        if (find(name) < 0) {
+            if ((names.size() << 1) > slots.length) {
+                rehash();
             }
+            insert(names.size() - 1);
         }
-        return null;
+        return names.size() - 1;
+    }
+
+    public String get(int index) {
+        return names.get(index);
+    }
+
+    public int size() {
+        return names.size();
     }
 
     /**
-     * Fill REACHED_STATE by true if state connected with the other states
+     * Find the first index of the name
      *
-     * @param initialState initial state for starting process of iteration over all states
+     * @param name name to find
+     * @return index of the name; -1 if there is no such name
      */
-    private void getAllPossibleReachedStates(State initialState) {
-        REACHED_STATES.add(initialState);
-        for (State state : initialState.getPossibleStatesToMove()) {
-            if (!REACHED_STATES.contains(state)) {
-                getAllPossibleReachedStates(state);
+    public int find(String name) {
+        int mask = slots.length - 1;
+        for (int slot = hash(name) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (names.get(slots[slot] - 1).equals(name)) {
+                return slots[slot] - 1;
             }
         }
+        return -1;
     }
 
     /**
-     * Check if there is more than one transition with the same transition token for some state
+     * Find the first index of the name, given by the ASCII bytes
      *
-     * @param states original set of possible states
-     * @return true - if there is no more than one transition with the same transition token for each token;
-     * Otherwise, false
+     * @param bytes  buffer with the name at the beginning
+     * @param length length of the name
+     * @return index of the name; -1 if there is no such name
      */
-    public boolean isDeterministic(ArrayList<State> states) {
-        for (State state : states) {
-            ArrayList<Transition> allTransitions = new ArrayList<>();
+    public int find(byte[] bytes, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (bytes[i] & 0xFF);
+        }
 
-            for (ArrayList<Transition> transitionArrayList : state.getTransitions()) {
-                allTransitions.addAll(transitionArrayList);
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (equals(names.get(slots[slot] - 1), bytes, length)) {
+                return slots[slot] - 1;
             }
+        }
+        return -1;
+    }
 
-            int possibleTransitions = allTransitions.size();
-            int distinctPossibleTransitions = allTransitions.stream().distinct().toList().size();
-
-            if (distinctPossibleTransitions != possibleTransitions) {
+    private static boolean equals(String name, byte[] bytes, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != (bytes[i] & 0xFF)) {
                 return false;
             }
         }
-
         return true;
     }
+
+    private static int hash(String name) {
+        // The same as String.hashCode(), so it is equal to the hash of the same ASCII bytes
+        return spread(name.hashCode());
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void insert(int index) {
+        int mask = slots.length - 1;
+        int slot = hash(names.get(index)) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    private void rehash() {
+        int[] oldSlots = slots;
+        slots = new int[oldSlots.length << 1];
+        for (int slot : oldSlots) {
+            if (slot != 0) {
+                insert(slot - 1);
+            }
+        }
+    }
 }
 
 /**
- * Class, which represents the simple model of FSA.
+ * Single-pass parser of the input format. The input is read byte by byte through one buffer
+ * (the format is pure ASCII), the names are checked and interned while they are read, and the
+ * result is the IndexedFSA. No lines, substrings or arrays of parts are created.
+ * <p>
+ * Errors are reported in the same order as the lines and the names appear in the input:
+ * E1 for the malformed line or name, E2-E5 for the particular problems of each line.
+ * <p>
+ * The input file can be memory-mapped instead of being read: then the bytes are parsed right from
+ * the page cache, without copies into the heap.
  */
-class FSA {
-    private final ArrayList<State> states;
-    private final ArrayList<Transition> alpha;
-    private State initialState;
-    private final ArrayList<State> acceptingStates;
+class FSATokenizer {
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Size of one mapped region of the file. Single MappedByteBuffer cannot be bigger than 2 GB.
+     */
+    private static final long MAPPED_REGION_SIZE = 1L << 30;
+    private static final int END_OF_INPUT = -1;
+    private static final int END_OF_LINE = '\n';
 
-    public FSA(ArrayList<State> states, ArrayList<Transition> alpha, State initialState, ArrayList<State> acceptingStates) {
-        this.states = states;
-        this.alpha = alpha;
-        this.initialState = initialState;
-        this.acceptingStates = acceptingStates;
-    }
+    private final InputStream input;
+    private final FileChannel channel;
+    /**
+     * Position in the file right after the mapped region
+     */
+    private long mappedPosition = 0;
+    private ByteBuffer buffer;
+    private final Checker checker;
+    /**
+     * The last read name
+     */
+    private byte[] token = new byte[64];
+    private int tokenLength = 0;
+    /**
+     * Checks E6 and E7 of the transitions, done while they are parsed
+     */
+    private TransitionChecker transitionChecker;
 
-    public ArrayList<State> getStates() {
-        return states;
+    FSATokenizer(InputStream input, Checker checker) {
+        this.input = input;
+        this.channel = null;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+        this.checker = checker;
     }
 
-    public ArrayList<Transition> getAlpha() {
-        return alpha;
+    /**
+     * Create the tokenizer, which maps the file region by region
+     *
+     * @param channel channel of the input file
+     * @param checker checker of the names
+     */
+    FSATokenizer(FileChannel channel, Checker checker) {
+        this.input = null;
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(0);
+        this.checker = checker;
     }
 
-    public State getInitialState() {
-        return initialState;
+    /**
+     * Parse all lines of the input: states, alpha, initial, accepting and trans
+     *
+     * @return parsed FSA
+     * @throws IOException if the input cannot be read
+     */
+    public IndexedFSA parse() throws IOException, InputMalformedException, InitialStateNotDefinedException,
+            SetOfAcceptingStatesEmptyException, IncorrectStateException, TransitionIsNotPresentedException {
+        IndexedFSA.Builder builder = new IndexedFSA.Builder();
+
+        parseStates(builder);
+        parseAlpha(builder);
+        parseInitialState(builder);
+        parseAcceptingStates(builder);
+        parseTransitions(builder);
+
+        return builder.build();
     }
 
-    public void setInitialState(State initialState) {
-        this.initialState = initialState;
+    /**
+     * Get the checks of E6 and E7 of the FSA, made by the last {@link #parse()}
+     *
+     * @return checks of the transitions; null if the parsing did not reach them
+     */
+    public TransitionChecker getTransitionChecker() {
+        return transitionChecker;
     }
 
-    public ArrayList<State> getAcceptingStates() {
-        return acceptingStates;
+    private void parseStates(IndexedFSA.Builder builder) throws IOException, InputMalformedException {
+        expectKeyword("states=[");
+
+        int delimiter;
+        do {
+            delimiter = readToken(false);
+            if (tokenLength == 0) {
+                throw new InputMalformedException();
+            }
+            for (int i = 0; i < tokenLength; i++) {
+                if (!checker.isStateNameChar((char) (token[i] & 0xFF))) {
+                    throw new InputMalformedException();
+                }
+            }
+
+            builder.addState(tokenToString());
+        } while (delimiter == ',');
+
+        expectEndOfList(delimiter);
     }
-}
 
-/**
- * Class, which represents the Kleene's Algorithm for understanding the RegExp, which
- * accepted by given FSA.
- */
-class KleeneAlgorithm {
-    private static final String EMPTY_SET = "{}";
-    private static final String EPSILON = "eps";
+    private void parseAlpha(IndexedFSA.Builder builder) throws IOException, InputMalformedException {
+        expectKeyword("alpha=[");
 
-    /**
-     * Get final accepted by given FSA RegExp without reducing terms.
-     * @param fsa for which will be found RegExp
-     * @return string, represents the possible regExp, accepted by FSA.
-     */
-    public String getFinalRegExp(FSA fsa) {
-        ArrayList<ArrayList<String>> steps = createEmptyStateArrays(fsa);
+        int delimiter;
+        do {
+            delimiter = readToken(false);
+            if (tokenLength == 0) {
+                throw new InputMalformedException();
+            }
+            for (int i = 0; i < tokenLength; i++) {
+                if (!checker.isTransitionNameChar((char) (token[i] & 0xFF))) {
+                    throw new InputMalformedException();
+                }
+            }
+
+            builder.addSymbol(tokenToString());
+        } while (delimiter == ',');
 
-        initialStep(fsa, steps);
-        for (int k = 0; k < fsa.getStates().size(); k++) {
-            steps = makeStep(fsa, steps, k);
+        expectEndOfList(delimiter);
+    }
+
+    private void parseInitialState(IndexedFSA.Builder builder) throws IOException, InputMalformedException,
+            InitialStateNotDefinedException, IncorrectStateException {
+        expectKeyword("initial=[");
+
+        int delimiter = readToken(false);
+        // If nothing was appeared
+        if (tokenLength == 0 && delimiter == ']') {
+            throw new InitialStateNotDefinedException();
+        }
+        // If more than one initial state
+        if (delimiter == ',') {
+            throw new InputMalformedException();
         }
+        expectEndOfList(delimiter);
 
-        ArrayList<Integer> indexesOfAcceptingStates = new ArrayList<>();
-        for (State finalState : fsa.getAcceptingStates()) {
-            indexesOfAcceptingStates.add(fsa.getStates().indexOf(finalState));
+        int state = builder.getStateIndex(token, tokenLength);
+        // If initial state is not in the possible states set
+        if (state < 0) {
+            throw new IncorrectStateException(tokenToString());
         }
+        builder.setInitialState(state);
+    }
+
+    private void parseAcceptingStates(IndexedFSA.Builder builder) throws IOException, InputMalformedException,
+            SetOfAcceptingStatesEmptyException, IncorrectStateException {
+        expectKeyword("accepting=[");
 
-        StringBuilder stringBuilder = new StringBuilder();
-        for (Integer index : indexesOfAcceptingStates) {
-            stringBuilder.append("(");
-            stringBuilder.append(steps.get(fsa.getStates().indexOf(fsa.getInitialState())).get(index)).append(")");
-            stringBuilder.append("|");
+        int delimiter = readToken(false);
+        // If nothing was appeared
+        if (tokenLength == 0 && delimiter == ']') {
+            throw new SetOfAcceptingStatesEmptyException();
         }
-        stringBuilder.deleteCharAt(stringBuilder.length() - 1);
 
-        return stringBuilder.toString();
-    }
+        while (true) {
+            if (delimiter != ',' && delimiter != ']') {
+                throw new InputMalformedException();
+            }
+
+            int state = builder.getStateIndex(token, tokenLength);
+            // If particular state is not belong to the possible states set
+            if (state < 0) {
+                throw new IncorrectStateException(tokenToString());
+            }
+            builder.addAcceptingState(state);
 
-    private ArrayList<ArrayList<String>> createEmptyStateArrays(FSA fsa) {
-        ArrayList<ArrayList<String>> steps = new ArrayList<>();
-        for (int i = 0; i < fsa.getStates().size(); i++) {
-            steps.add(new ArrayList<>());
-            for (int j = 0; j < fsa.getStates().size(); j++) {
-                steps.get(i).add(EMPTY_SET);
+            if (delimiter == ']') {
+                break;
             }
+            delimiter = readToken(false);
         }
-        return steps;
+
+        expectEndOfList(delimiter);
     }
 
-    private ArrayList<ArrayList<String>> makeStep(FSA fsa, ArrayList<ArrayList<String>> steps, int k) {
-        ArrayList<ArrayList<String>> newArr = new ArrayList<>();
+    private void parseTransitions(IndexedFSA.Builder builder) throws IOException, InputMalformedException,
+            IncorrectStateException, TransitionIsNotPresentedException {
+        expectKeyword("trans=[");
+        transitionChecker = new TransitionChecker(checker, builder.getStatesCount(), builder.getSymbolsCount());
 
-        for (int i = 0; i < fsa.getStates().size(); i++) {
-            newArr.add(new ArrayList<>());
-            for (int j = 0; j < fsa.getStates().size(); j++) {
-                newArr.get(i).add(formatRegExp(steps, i, j, k));
-            }
+        // If nothing was appeared
+        if (peek() == ']') {
+            read();
+            expectEndOfLine();
+            return;
         }
 
-        return newArr;
-    }
+        int delimiter;
+        do {
+            // Transition split by separator = ">": source, token and destination are checked only
+            // when the whole transition is read
+            delimiter = readToken(true);
+            int source = builder.getStateIndex(token, tokenLength);
+            String sourceName = source < 0 ? tokenToString() : null;
+            if (delimiter != '>') {
+                throw new InputMalformedException();
+            }
+
+            delimiter = readToken(true);
+            int symbol = builder.getSymbolIndex(token, tokenLength);
+            String symbolName = symbol < 0 ? tokenToString() : null;
+            if (delimiter != '>') {
+                throw new InputMalformedException();
+            }
+
+            delimiter = readToken(true);
+            int target = builder.getStateIndex(token, tokenLength);
+            String targetName = target < 0 ? tokenToString() : null;
+            // Empty destination is the missing part of the transition, as "q0>a>" has only two parts
+            if ((delimiter != ',' && delimiter != ']') || tokenLength == 0) {
+                throw new InputMalformedException();
+            }
 
-    private String formatRegExp(ArrayList<ArrayList<String>> steps, int i, int j, int k) {
-        return "(" + steps.get(i).get(k) + ")" +
-                "(" + steps.get(k).get(k) + ")" +
-                "*" +
-                "(" + steps.get(k).get(j) + ")" +
-                "|" +
-                "(" + steps.get(i).get(j) + ")";
+            if (source < 0) {
+                throw new IncorrectStateException(sourceName);
+            }
+            if (symbol < 0) {
+                throw new TransitionIsNotPresentedException(symbolName);
+            }
+            if (target < 0) {
+                throw new IncorrectStateException(targetName);
+            }
+
+            builder.addTransition(source, symbol, target);
+            transitionChecker.addTransition(source, symbol, target);
+        } while (delimiter == ',');
+
+        expectEndOfList(delimiter);
     }
 
+    /**
+     * Read the name into the token buffer
+     *
+     * @param isTransition true - '>' also ends the name
+     * @return the char after the name: ',', ']', '>', END_OF_LINE or END_OF_INPUT
+     */
+    private int readToken(boolean isTransition) throws IOException {
+        tokenLength = 0;
+
+        while (true) {
+            int c = read();
+            if (c == ',' || c == ']' || c == END_OF_LINE || c == END_OF_INPUT || (isTransition && c == '>')) {
+                return c;
+            }
 
-    private void initialStep(FSA fsa, ArrayList<ArrayList<String>> steps) {
-        for (int i = 0; i < fsa.getStates().size(); i++) {
-            for (int j = 0; j < fsa.getStates().size(); j++) {
-                steps.get(i).set(j, getRegExp(fsa, i, j));
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, tokenLength * 2);
             }
+            token[tokenLength++] = (byte) c;
         }
     }
 
-    private String getRegExp(FSA fsa, int i, int j) {
-        ArrayList<String> tokens = new ArrayList<>(findTransitions(fsa, i, j));
+    private String tokenToString() {
+        return new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1);
+    }
+
+    private void expectKeyword(String keyword) throws IOException, InputMalformedException {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (read() != keyword.charAt(i)) {
+                throw new InputMalformedException();
+            }
+        }
+    }
 
-        tokens.sort(String::compareTo);
-        StringBuilder stringBuilder = new StringBuilder();
+    private void expectEndOfList(int delimiter) throws IOException, InputMalformedException {
+        if (delimiter != ']') {
+            throw new InputMalformedException();
+        }
+        expectEndOfLine();
+    }
 
-        for (String token : tokens) {
-            stringBuilder.append(token).append("|");
+    private void expectEndOfLine() throws IOException, InputMalformedException {
+        int c = read();
+        if (c != END_OF_LINE && c != END_OF_INPUT) {
+            throw new InputMalformedException();
         }
-        stringBuilder.deleteCharAt(stringBuilder.length() - 1);
+    }
 
-        if (i == j) {
-            if (tokens.get(0).equals(EMPTY_SET)) {
-                return EPSILON;
+    /**
+     * Read the next byte. "\r\n" and "\r" are returned as END_OF_LINE.
+     */
+    private int read() throws IOException {
+        int c = readByte();
+        if (c == '\r') {
+            if (peek() == '\n') {
+                readByte();
             }
-            stringBuilder.append("|").append(EPSILON);
+            return END_OF_LINE;
         }
+        return c;
+    }
 
-        return stringBuilder.toString();
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return END_OF_INPUT;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
     }
 
-    private ArrayList<String> findTransitions(FSA fsa, int i, int j) {
-        State source = fsa.getStates().get(i);
-        State dest = fsa.getStates().get(j);
+    private int readByte() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return END_OF_INPUT;
+        }
+        return buffer.get() & 0xFF;
+    }
 
-        ArrayList<String> trans = new ArrayList<>();
+    /**
+     * Fill the buffer by the next part of the input
+     *
+     * @return false - if the input is over
+     */
+    private boolean fill() throws IOException {
+        if (channel != null) {
+            long size = channel.size();
+            if (mappedPosition >= size) {
+                return false;
+            }
 
-        if (!source.getPossibleStatesToMove().contains(dest)) {
-            trans.add(EMPTY_SET);
-            return trans;
+            long length = Math.min(MAPPED_REGION_SIZE, size - mappedPosition);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappedPosition, length);
+            mappedPosition += length;
+            return true;
         }
 
-        for (Transition transition : source.getTransitions().get(source.getPossibleStatesToMove().indexOf(dest))) {
-            trans.add(transition.name());
+        int count = input.read(buffer.array(), 0, buffer.capacity());
+        if (count <= 0) {
+            buffer.limit(0);
+            return false;
         }
-
-        return trans;
+        buffer.position(0);
+        buffer.limit(count);
+        return true;
     }
 }
 
@@ -747,6 +4692,10 @@ class State {
      * All transition tokens which can be used from this state
      */
     private final ArrayList<ArrayList<Transition>> transitions = new ArrayList<>();
+    /**
+     * Index of each reachable state in possibleStatesToMove
+     */
+    private final HashMap<State, Integer> indexesOfPossibleStates = new HashMap<>();
     private final String name;
 
     State(String name) {
@@ -759,6 +4708,10 @@ class State {
 
     public void setPossibleStatesToMove(ArrayList<State> possibleStatesToMove) {
         this.possibleStatesToMove = possibleStatesToMove;
+        indexesOfPossibleStates.clear();
+        for (int i = 0; i < possibleStatesToMove.size(); i++) {
+            indexesOfPossibleStates.putIfAbsent(possibleStatesToMove.get(i), i);
+        }
     }
 
     public ArrayList<ArrayList<Transition>> getTransitions() {
@@ -770,11 +4723,13 @@ class State {
     }
 
     public void addPossibleTransition(State destState, Transition transition) {
-        if (possibleStatesToMove.contains(destState)) {
-            transitions.get(possibleStatesToMove.indexOf(destState)).add(transition);
+        Integer index = indexesOfPossibleStates.get(destState);
+        if (index != null) {
+            transitions.get(index).add(transition);
             return;
         }
 
+        indexesOfPossibleStates.put(destState, possibleStatesToMove.size());
         possibleStatesToMove.add(destState);
         transitions.add(new ArrayList<>());
         transitions.get(transitions.size() - 1).add(transition);
@@ -789,7 +4744,13 @@ class State {
 record Transition(String name) {
 }
 
-class IncorrectStateException extends Exception {
+/**
+ * Error of the FSA validation. The message of the error (E1-E7) is its toString().
+ */
+abstract class FSAException extends Exception {
+}
+
+class IncorrectStateException extends FSAException {
     private final String stateName;
 
     IncorrectStateException(String stateName) {
@@ -801,14 +4762,14 @@ class IncorrectStateException extends Exception {
     }
 }
 
-class DisjointStatesException extends Exception {
+class DisjointStatesException extends FSAException {
     @Override
     public String toString() {
         return "E6: Some states are disjoint\n";
     }
 }
 
-class TransitionIsNotPresentedException extends Exception {
+class TransitionIsNotPresentedException extends FSAException {
     private final String transitionName;
 
     TransitionIsNotPresentedException(String transitionName) {
@@ -820,28 +4781,28 @@ class TransitionIsNotPresentedException extends Exception {
     }
 }
 
-class InitialStateNotDefinedException extends Exception {
+class InitialStateNotDefinedException extends FSAException {
     @Override
     public String toString() {
         return "E2: Initial state is not defined\n";
     }
 }
 
-class InputMalformedException extends Exception {
+class InputMalformedException extends FSAException {
     @Override
     public String toString() {
         return "E1: Input file is malformed\n";
     }
 }
 
-class SetOfAcceptingStatesEmptyException extends Exception {
+class SetOfAcceptingStatesEmptyException extends FSAException {
     @Override
     public String toString() {
         return "E3: Set of accepting states is empty\n";
     }
 }
 
-class FSANondeterministicException extends Exception {
+class FSANondeterministicException extends FSAException {
     @Override
     public String toString() {
         return "E7: FSA is nondeterministic\n";
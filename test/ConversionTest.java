@@ -0,0 +1,355 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.StringJoiner;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Each engine and option must produce the regExp, which accepts the same words as the FSA. The text of the
+ * regExp differs between them, so the languages are compared on all words up to {@link #MAX_WORD_LENGTH}.
+ */
+class ConversionTest {
+    private static final int MAX_WORD_LENGTH = 5;
+    private static final int RANDOM_AUTOMATA = 40;
+
+    /**
+     * Example of README, which output is kept since the first version of the program
+     */
+    static final String EXAMPLE = """
+            states=[0,1]
+            alpha=[a,b]
+            initial=[0]
+            accepting=[1]
+            trans=[0>a>0,0>b>1,1>a>1,1>b>1]
+            """;
+    private static final String EXAMPLE_RESULT =
+            "(((a|eps)(a|eps)*(b)|(b))(({})(a|eps)*(b)|(a|b|eps))*(({})(a|eps)*(b)|(a|b|eps))|((a|eps)(a|eps)*(b)|(b)))";
+
+    static List<String> automata() {
+        ArrayList<String> automata = new ArrayList<>(List.of(
+                EXAMPLE,
+                // Unreachable and dead states
+                """
+                        states=[s0,x1,q2,d]
+                        alpha=[a,b]
+                        initial=[x1]
+                        accepting=[x1]
+                        trans=[x1>a>q2,q2>a>x1,s0>a>q2,q2>b>d]
+                        """,
+                // Equivalent states, which the minimization merges
+                """
+                        states=[p,q,r]
+                        alpha=[a,b]
+                        initial=[p]
+                        accepting=[q,r]
+                        trans=[p>a>q,p>b>r,q>a>q,r>a>r]
+                        """,
+                // Long names of the tokens and the accepting initial state
+                """
+                        states=[on,off]
+                        alpha=[push_1,wait]
+                        initial=[off]
+                        accepting=[off]
+                        trans=[off>push_1>on,on>push_1>off,on>wait>on]
+                        """));
+
+        Random random = new Random(42);
+        for (int i = 0; i < RANDOM_AUTOMATA; i++) {
+            automata.add(randomAutomaton(random, 1 + random.nextInt(5)));
+        }
+        return automata;
+    }
+
+    /**
+     * Random connected DFA over the tokens a, b and c_1
+     */
+    private static String randomAutomaton(Random random, int statesCount) {
+        String[] symbols = {"a", "b", "c_1"};
+        int[][] targets = new int[statesCount][symbols.length];
+        for (int[] row : targets) {
+            Arrays.fill(row, -1);
+        }
+
+        // Each state is joined to some previous one, so the states are not disjoint
+        for (int state = 1; state < statesCount; state++) {
+            while (true) {
+                int other = random.nextInt(state);
+                int symbol = random.nextInt(symbols.length);
+                int source = random.nextBoolean() ? state : other;
+                if (targets[source][symbol] < 0) {
+                    targets[source][symbol] = source == state ? other : state;
+                    break;
+                }
+            }
+        }
+        for (int[] row : targets) {
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                if (row[symbol] < 0 && random.nextInt(3) == 0) {
+                    row[symbol] = random.nextInt(statesCount);
+                }
+            }
+        }
+
+        StringJoiner states = new StringJoiner(",");
+        StringJoiner accepting = new StringJoiner(",");
+        StringJoiner transitions = new StringJoiner(",");
+        int forcedAccepting = random.nextInt(statesCount);
+        for (int state = 0; state < statesCount; state++) {
+            states.add("q" + state);
+            if (state == forcedAccepting || random.nextInt(3) == 0) {
+                accepting.add("q" + state);
+            }
+            for (int symbol = 0; symbol < symbols.length; symbol++) {
+                if (targets[state][symbol] >= 0) {
+                    transitions.add("q" + state + ">" + symbols[symbol] + ">q" + targets[state][symbol]);
+                }
+            }
+        }
+
+        return "states=[" + states + "]\nalpha=[a,b,c_1]\ninitial=[q" + random.nextInt(statesCount)
+                + "]\naccepting=[" + accepting + "]\ntrans=[" + transitions + "]\n";
+    }
+
+    @Test
+    void exampleKeepsTheTextOfTheFirstVersion() throws IOException {
+        try (FSAConverter converter = new FSAConverter(new KleeneAlgorithm())) {
+            ConversionResult result = converter.convert(toStream(EXAMPLE));
+            assertTrue(result.isSuccess());
+            assertEquals(EXAMPLE_RESULT, result.regExp().toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void kleeneAcceptsTheLanguageOfFSA(String input) throws Exception {
+        IndexedFSA fsa = parse(input);
+
+        KleeneAlgorithm sequential = new KleeneAlgorithm();
+        sequential.setParallelism(1);
+        assertSameLanguage(fsa, sequential.getFinalRegExpNode(FSA.of(fsa)), "sequential");
+
+        try (KleeneAlgorithm parallel = new KleeneAlgorithm()) {
+            parallel.setParallelism(2);
+            parallel.setSequentialThreshold(1);
+            assertSameLanguage(fsa, parallel.getFinalRegExpNode(FSA.of(fsa)), "parallel");
+        }
+
+        KleeneAlgorithm inPlace = new KleeneAlgorithm();
+        inPlace.setParallelism(1);
+        inPlace.setInPlace(true);
+        assertSameLanguage(fsa, inPlace.getFinalRegExpNode(FSA.of(fsa)), "in-place");
+
+        KleeneAlgorithm simplified = new KleeneAlgorithm();
+        simplified.setParallelism(1);
+        simplified.setSimplify(true);
+        assertSameLanguage(fsa, simplified.getFinalRegExpNode(FSA.of(fsa)), "simplify");
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void eliminationAcceptsTheLanguageOfFSA(String input) throws Exception {
+        IndexedFSA fsa = parse(input);
+        for (StateEliminationAlgorithm.EliminationOrder order : StateEliminationAlgorithm.EliminationOrder.values()) {
+            StateEliminationAlgorithm elimination = new StateEliminationAlgorithm(order);
+            assertSameLanguage(fsa, elimination.getFinalRegExpNode(FSA.of(fsa)), "elimination " + order);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void sessionAndQueryAcceptTheLanguageOfFSA(String input) throws Exception {
+        IndexedFSA fsa = parse(input);
+        KleeneAlgorithm kleene = new KleeneAlgorithm();
+        assertSameLanguage(fsa, kleene.session(FSA.of(fsa)).getFinalRegExpNode(), "session");
+
+        String[] accepting = Arrays.stream(fsa.getAcceptingStates()).mapToObj(fsa::getStateName)
+                .toArray(String[]::new);
+        assertSameLanguage(fsa, kleene.query(FSA.of(fsa)).query(fsa.getStateName(fsa.getInitialState()), accepting),
+                "query");
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void reductionsKeepTheLanguageOfFSA(String input) throws Exception {
+        IndexedFSA fsa = parse(input);
+        for (EnumSet<FSAConverter.Reduction> reductions : List.of(EnumSet.of(FSAConverter.Reduction.TRIM),
+                EnumSet.of(FSAConverter.Reduction.MINIMIZE), EnumSet.allOf(FSAConverter.Reduction.class))) {
+            FSAConverter converter = new FSAConverter(new KleeneAlgorithm(), null, reductions);
+            ConversionResult result = converter.convert(toStream(input));
+            assertTrue(result.isSuccess());
+            assertSameLanguage(fsa, result.regExp(), reductions.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void cacheKeepsTheTextOfTheMiss(String input) throws Exception {
+        KleeneAlgorithm kleene = new KleeneAlgorithm();
+        ResultCache cache = new ResultCache(kleene.getSignature(), 1 << 20);
+        FSAConverter cached = new FSAConverter(kleene, cache, EnumSet.noneOf(FSAConverter.Reduction.class));
+        FSAConverter uncached = new FSAConverter(kleene);
+
+        RegExp miss = cached.convert(toStream(input)).regExp();
+        assertEquals(uncached.convert(toStream(input)).regExp().toString(), miss.toString());
+
+        // Other names of the states have the same canonical form, so the result of the miss is returned
+        String renamed = renameStates(input);
+        assertSame(miss, cached.convert(toStream(renamed)).regExp());
+        assertSameLanguage(parse(renamed), miss, "cache hit");
+    }
+
+    /**
+     * Add the prefix to the names of all states; the tokens stay the same
+     */
+    private static String renameStates(String input) {
+        StringBuilder renamed = new StringBuilder();
+        for (String line : input.split("\n")) {
+            int open = line.indexOf('[');
+            String list = line.substring(open + 1, line.length() - 1);
+            String[] items = list.isEmpty() ? new String[0] : list.split(",");
+            for (int i = 0; i < items.length; i++) {
+                if (line.startsWith("trans=")) {
+                    String[] parts = items[i].split(">");
+                    items[i] = "r" + parts[0] + ">" + parts[1] + ">r" + parts[2];
+                } else if (!line.startsWith("alpha=")) {
+                    items[i] = "r" + items[i];
+                }
+            }
+            renamed.append(line, 0, open + 1).append(String.join(",", items)).append("]\n");
+        }
+        return renamed.toString();
+    }
+
+    static IndexedFSA parse(String input) throws Exception {
+        return new FSATokenizer(toStream(input), new Checker()).parse();
+    }
+
+    private static InputStream toStream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Check that the regExp accepts exactly the words of the FSA up to {@link #MAX_WORD_LENGTH} tokens
+     */
+    static void assertSameLanguage(IndexedFSA fsa, RegExp regExp, String message) {
+        int[] word = new int[MAX_WORD_LENGTH];
+        for (int length = 0; length <= MAX_WORD_LENGTH; length++) {
+            int wordsCount = (int) Math.pow(fsa.getSymbolsCount(), length);
+            for (int code = 0; code < wordsCount; code++) {
+                String[] names = new String[length];
+                for (int i = 0, rest = code; i < length; i++, rest /= fsa.getSymbolsCount()) {
+                    word[i] = rest % fsa.getSymbolsCount();
+                    names[i] = fsa.getSymbolName(word[i]);
+                }
+                assertEquals(accepts(fsa, word, length), matches(regExp, names),
+                        message + ": " + String.join(" ", names) + " in " + regExp);
+            }
+        }
+    }
+
+    private static boolean accepts(IndexedFSA fsa, int[] word, int length) {
+        int state = fsa.getInitialState();
+        for (int i = 0; i < length && state >= 0; i++) {
+            int next = -1;
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                if (fsa.getSymbol(t) == word[i]) {
+                    next = fsa.getTarget(t);
+                }
+            }
+            state = next;
+        }
+
+        for (int accepting : fsa.getAcceptingStates()) {
+            if (accepting == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Match the word by the spans: spans[i][j] of the node - the node matches the tokens [i, j) of the word.
+     * Spans are computed once for each node of the DAG, so the shared subterms are not matched again.
+     */
+    private static boolean matches(RegExp regExp, String[] word) {
+        int n = word.length + 1;
+        IdentityHashMap<RegExp, boolean[][]> spans = new IdentityHashMap<>();
+        for (RegExp node : regExp.getUniqueNodes()) {
+            boolean[][] span = new boolean[n][n];
+            switch (node.getKind()) {
+                case EMPTY_SET -> {
+                }
+                case EPSILON -> {
+                    for (int i = 0; i < n; i++) {
+                        span[i][i] = true;
+                    }
+                }
+                case SYMBOL -> {
+                    for (int i = 0; i + 1 < n; i++) {
+                        span[i][i + 1] = word[i].equals(node.getSymbol());
+                    }
+                }
+                case UNION -> {
+                    for (int c = 0; c < node.getChildrenCount(); c++) {
+                        boolean[][] child = spans.get(node.getChild(c));
+                        for (int i = 0; i < n; i++) {
+                            for (int j = i; j < n; j++) {
+                                span[i][j] |= child[i][j];
+                            }
+                        }
+                    }
+                }
+                case CONCAT -> {
+                    span = spans.get(node.getChild(0));
+                    for (int c = 1; c < node.getChildrenCount(); c++) {
+                        span = compose(span, spans.get(node.getChild(c)));
+                    }
+                }
+                case STAR -> {
+                    for (int i = 0; i < n; i++) {
+                        span[i][i] = true;
+                    }
+                    for (int round = 0; round < n; round++) {
+                        boolean[][] next = compose(span, spans.get(node.getChild(0)));
+                        for (int i = 0; i < n; i++) {
+                            for (int j = i; j < n; j++) {
+                                span[i][j] |= next[i][j];
+                            }
+                        }
+                    }
+                }
+            }
+            spans.put(node, span);
+        }
+        return spans.get(regExp)[0][word.length];
+    }
+
+    private static boolean[][] compose(boolean[][] left, boolean[][] right) {
+        int n = left.length;
+        boolean[][] result = new boolean[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                if (left[i][j]) {
+                    for (int k = j; k < n; k++) {
+                        result[i][k] |= right[j][k];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Errors E1-E5 of {@link FSATokenizer}: the first error in the order of the lines, of the names in a line
+ * and of the parts of a transition is reported.
+ */
+class FSATokenizerTest {
+    private static final String VALID = """
+            states=[q0,q1]
+            alpha=[a,b]
+            initial=[q0]
+            accepting=[q1]
+            trans=[q0>a>q1]
+            """;
+
+    private static final String E1 = "E1: Input file is malformed\n";
+    private static final String E2 = "E2: Initial state is not defined\n";
+    private static final String E3 = "E3: Set of accepting states is empty\n";
+
+    private static String e4(String state) {
+        return "E4: A state '" + state + "' is not in the set of states\n";
+    }
+
+    private static String e5(String token) {
+        return "E5: A transition '" + token + "' is not represented in the alphabet\n";
+    }
+
+    /**
+     * Replace the line of the valid input, which starts with the key
+     */
+    private static String with(String key, String line) {
+        return VALID.replaceFirst("(?m)^" + key + "=.*$", line);
+    }
+
+    static List<Arguments> errors() {
+        return List.of(
+                // E1: brackets, empty names and the parts of the transitions
+                Arguments.of(with("states", "states=q0]"), E1),
+                Arguments.of(with("states", "states=[q0,q1"), E1),
+                Arguments.of(with("states", "states=[q0,q_1]"), E1),
+                Arguments.of(with("alpha", "alpha=[a,,b]"), E1),
+                Arguments.of(with("initial", "initial=[x0"), E1),
+                Arguments.of(with("initial", "initial=[q0,q1]"), E1),
+                Arguments.of(with("trans", "trans=[q0>a>]"), E1),
+                Arguments.of(with("trans", "trans=[q0>a>,q1>a>q0]"), E1),
+                Arguments.of(with("trans", "trans=[q0>a>q1,]"), E1),
+                Arguments.of(with("trans", "trans=[q0>a]"), E1),
+                Arguments.of(with("trans", "trans=[q0>c>y>z]"), E1),
+                Arguments.of(with("trans", "trans=[q0>a>q1"), E1),
+                // E1: missing lines
+                Arguments.of("", E1),
+                Arguments.of("states=[q0,q1]\nalpha=[a,b]\n", E1),
+                Arguments.of("states=[q0,q1]\nalpha=[a,b]\ninitial=[q0]\naccepting=[q1]\n", E1),
+                Arguments.of(VALID.replace("alpha=[a,b]\n", ""), E1),
+                // E2-E5 of each line
+                Arguments.of(with("initial", "initial=[]"), E2),
+                Arguments.of(with("accepting", "accepting=[]"), E3),
+                Arguments.of(with("initial", "initial=[x0]"), e4("x0")),
+                Arguments.of(with("accepting", "accepting=[q1,x]"), e4("x")),
+                Arguments.of(with("trans", "trans=[x>a>q1]"), e4("x")),
+                Arguments.of(with("trans", "trans=[>a>q1]"), e4("")),
+                Arguments.of(with("trans", "trans=[q0>a>y]"), e4("y")),
+                Arguments.of(with("trans", "trans=[q0>c>q1]"), e5("c")),
+                Arguments.of(with("trans", "trans=[q0>>q1]"), e5("")),
+                // Order within a line: arity, then source, token and destination; then the next name
+                Arguments.of(with("trans", "trans=[x>c>y>z]"), E1),
+                Arguments.of(with("trans", "trans=[x>c>y]"), e4("x")),
+                Arguments.of(with("trans", "trans=[q0>c>y]"), e5("c")),
+                Arguments.of(with("trans", "trans=[q0>c>q1,x>a>q1]"), e5("c")),
+                Arguments.of(with("trans", "trans=[q0>a>q1,q1>c>q0]"), e5("c")),
+                Arguments.of(with("trans", "trans=[q0>a>x,q0>a]"), e4("x")),
+                Arguments.of(with("accepting", "accepting=[x,y]"), e4("x")),
+                Arguments.of(with("accepting", "accepting=[x,]"), e4("x")),
+                // Order across lines: the error of the earlier line wins
+                Arguments.of(with("initial", "initial=[]").replace("accepting=[q1]", "accepting=[]"), E2),
+                Arguments.of(with("initial", "initial=[x0]").replace("accepting=[q1]", "accepting=[]"), e4("x0")),
+                Arguments.of(with("initial", "initial=[]").replace("q0>a>q1", "q0>c>q1"), E2),
+                Arguments.of(with("accepting", "accepting=[]").replace("q0>a>q1", "q0>a"), E3),
+                Arguments.of(with("accepting", "accepting=[x]").replace("q0>a>q1", "q0>a"), e4("x")),
+                Arguments.of(with("alpha", "alpha=[a,,b]").replace("initial=[q0]", "initial=[]"), E1),
+                Arguments.of(with("states", "states=[q0,q1").replace("alpha=[a,b]", "alpha=[a,,b]"), E1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("errors")
+    void firstErrorIsReported(String input, String expected) throws Exception {
+        FSAException error = null;
+        try {
+            new FSATokenizer(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), new Checker())
+                    .parse();
+        } catch (FSAException e) {
+            error = e;
+        }
+        assertNotNull(error, input);
+        assertEquals(expected, error.toString(), input);
+    }
+}
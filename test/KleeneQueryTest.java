@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Cells of {@link KleeneQuery} must have the same text as the cells of the full computation of
+ * {@link KleeneAlgorithm}, whatever pairs of states are queried and in whatever order.
+ */
+class KleeneQueryTest {
+    static Iterable<String> automata() {
+        return ConversionTest.automata();
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void cellsKeepTheTextOfTheFullComputation(String input) throws Exception {
+        IndexedFSA fsa = ConversionTest.parse(input);
+        int n = fsa.getStatesCount();
+        ArrayList<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                pairs.add(new int[]{i, j});
+            }
+        }
+        // The cells memoized by the previous pairs are reused by the next ones
+        Collections.shuffle(pairs, new Random(input.hashCode()));
+
+        for (boolean simplify : new boolean[]{false, true}) {
+            KleeneAlgorithm kleene = new KleeneAlgorithm();
+            kleene.setSimplify(simplify);
+            KleeneQuery query = kleene.query(FSA.of(fsa));
+            for (int[] pair : pairs) {
+                // Final regExp of the FSA with the initial state i and the only accepting state j is the
+                // union of the single cell R^n_ij
+                RegExp expected = kleene.getFinalRegExpNode(FSA.of(withEnds(fsa, pair[0], pair[1])));
+                RegExpFactory factory = simplify ? new SimplifyingRegExpFactory() : new RegExpFactory();
+                RegExp actual = factory.union(List.of(query.getCell(pair[0], pair[1])));
+                assertEquals(expected.toString(), actual.toString(),
+                        "R^n_" + pair[0] + pair[1] + ", simplify=" + simplify);
+            }
+        }
+    }
+
+    /**
+     * Copy of the FSA with the initial state i and the only accepting state j
+     */
+    private static IndexedFSA withEnds(IndexedFSA fsa, int i, int j) {
+        IndexedFSA.Builder builder = new IndexedFSA.Builder();
+        for (int state = 0; state < fsa.getStatesCount(); state++) {
+            builder.addState(fsa.getStateName(state));
+        }
+        for (int symbol = 0; symbol < fsa.getSymbolsCount(); symbol++) {
+            builder.addSymbol(fsa.getSymbolName(symbol));
+        }
+        builder.setInitialState(i);
+        builder.addAcceptingState(j);
+        for (int state = 0; state < fsa.getStatesCount(); state++) {
+            for (int t = fsa.getTransitionsBegin(state); t < fsa.getTransitionsEnd(state); t++) {
+                builder.addTransition(state, fsa.getSymbol(t), fsa.getTarget(t));
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Edited {@link KleeneSession} must have the same text as the full computation of the edited FSA, while the
+ * appended state computes again only a part of the layers.
+ */
+class KleeneSessionTest {
+    private static final String NEW_STATE = "z9";
+
+    static Iterable<String> automata() {
+        return ConversionTest.automata();
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void editedSessionKeepsTheTextOfTheFullComputation(String input) throws Exception {
+        for (boolean simplify : new boolean[]{false, true}) {
+            KleeneAlgorithm kleene = new KleeneAlgorithm();
+            kleene.setSimplify(simplify);
+            IndexedFSA fsa = ConversionTest.parse(input);
+            String first = fsa.getStateName(0);
+            String last = fsa.getStateName(fsa.getStatesCount() - 1);
+            KleeneSession session = kleene.session(FSA.of(fsa));
+            session.getFinalRegExpNode();
+
+            // New tokens keep the edited FSA deterministic
+            String edited = append(append(input, "alpha", "d"), "alpha", "e");
+            session.addState(NEW_STATE);
+            session.addTransition(first, "d", NEW_STATE);
+            session.addTransition(NEW_STATE, "d", first);
+            edited = append(append(append(edited, "states", NEW_STATE),
+                    "trans", first + ">d>" + NEW_STATE), "trans", NEW_STATE + ">d>" + first);
+            assertSameText(kleene, edited, session, "appended state");
+            long n = session.getStatesCount();
+            assertTrue(session.getLastComputedCellsCount() < n * n * (n + 1),
+                    session.getLastComputedCellsCount() + " cells of " + n + " states");
+
+            session.addTransition(last, "e", first);
+            edited = append(edited, "trans", last + ">e>" + first);
+            assertSameText(kleene, edited, session, "transition between the existing states");
+
+            session.addAcceptingState(NEW_STATE);
+            edited = append(edited, "accepting", NEW_STATE);
+            assertSameText(kleene, edited, session, "accepting state");
+        }
+    }
+
+    private static void assertSameText(KleeneAlgorithm kleene, String edited, KleeneSession session,
+                                       String message) throws Exception {
+        RegExp expected = kleene.getFinalRegExpNode(FSA.of(ConversionTest.parse(edited)));
+        assertEquals(expected.toString(), session.getFinalRegExpNode().toString(), message + " in " + edited);
+    }
+
+    /**
+     * Append the item to the list of the line with the key
+     */
+    private static String append(String input, String key, String item) {
+        StringBuilder appended = new StringBuilder();
+        for (String line : input.split("\n")) {
+            if (line.startsWith(key + "=")) {
+                line = line.substring(0, line.length() - 1) + (line.endsWith("[]") ? "" : ",") + item + "]";
+            }
+            appended.append(line).append('\n');
+        }
+        return appended.toString();
+    }
+}
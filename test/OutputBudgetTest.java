@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Budget of --max-output and its policies (see {@link Main#planOutput})
+ */
+class OutputBudgetTest {
+    private static ConversionResult convert(String input) throws IOException {
+        return new FSAConverter(new KleeneAlgorithm())
+                .convert(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Main.BudgetPolicy.class)
+    void errorIsNotLimitedByTheBudget(Main.BudgetPolicy policy) throws IOException {
+        ConversionResult result = convert("states=q0]\n");
+        assertFalse(result.isSuccess());
+
+        Main.OutputPlan plan = Main.planOutput(result, RegExp.Notation.LITERAL, Main.OutputFormat.FLAT,
+                BigInteger.TEN, policy);
+        assertFalse(plan.overBudget());
+        assertEquals(RegExp.Notation.LITERAL, plan.notation());
+        assertEquals(Main.OutputFormat.FLAT, plan.format());
+        assertEquals(result.getOutputSize(RegExp.Notation.LITERAL), plan.size());
+    }
+
+    @Test
+    void regExpOverTheBudgetFails() throws IOException {
+        ConversionResult result = convert(ConversionTest.EXAMPLE);
+
+        Main.OutputPlan plan = Main.planOutput(result, RegExp.Notation.LITERAL, Main.OutputFormat.FLAT,
+                BigInteger.TEN, Main.BudgetPolicy.FAIL);
+        assertTrue(plan.overBudget());
+        assertEquals(BigInteger.valueOf(result.regExp().getLength() + 1), plan.size());
+    }
+
+    @Test
+    void compactPolicySwitchesTheNotation() throws IOException {
+        ConversionResult result = convert(ConversionTest.EXAMPLE);
+        BigInteger minimalSize = result.getOutputSize(RegExp.Notation.MINIMAL);
+
+        Main.OutputPlan plan = Main.planOutput(result, RegExp.Notation.LITERAL, Main.OutputFormat.FLAT,
+                minimalSize, Main.BudgetPolicy.COMPACT);
+        assertFalse(plan.overBudget());
+        assertEquals(RegExp.Notation.MINIMAL, plan.notation());
+        assertEquals(minimalSize, plan.size());
+    }
+
+    @Test
+    void regExpWithinTheBudgetIsKept() throws IOException {
+        ConversionResult result = convert(ConversionTest.EXAMPLE);
+        BigInteger size = result.getOutputSize(RegExp.Notation.LITERAL);
+
+        Main.OutputPlan plan = Main.planOutput(result, RegExp.Notation.LITERAL, Main.OutputFormat.FLAT,
+                size, Main.BudgetPolicy.COMPACT);
+        assertFalse(plan.overBudget());
+        assertEquals(RegExp.Notation.LITERAL, plan.notation());
+    }
+}
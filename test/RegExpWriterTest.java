@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Streamed text of {@link RegExpWriter} must be the same as the text of the node, and the format of
+ * definitions must expand back to it (see {@link DefinitionsExpander}).
+ */
+class RegExpWriterTest {
+    @TempDir
+    Path directory;
+
+    static Iterable<String> automata() {
+        return ConversionTest.automata();
+    }
+
+    @ParameterizedTest
+    @MethodSource("automata")
+    void definitionsExpandToTheFlatText(String input) throws Exception {
+        for (ConversionEngine engine : new ConversionEngine[]{new KleeneAlgorithm(),
+                new StateEliminationAlgorithm(StateEliminationAlgorithm.EliminationOrder.FEWEST_EDGES)}) {
+            RegExp regExp = engine.getFinalRegExpNode(FSA.of(ConversionTest.parse(input)));
+            for (RegExp.Notation notation : RegExp.Notation.values()) {
+                assertEquals(regExp.toString(notation), write(regExp, notation));
+                assertEquals(regExp.toString(notation), expand(writeDefinitions(regExp, notation), notation));
+            }
+        }
+    }
+
+    /**
+     * Tokens made of digits follow the names of the definitions right after their numbers
+     */
+    static Iterable<String> digitAutomata() {
+        return List.of("""
+                states=[p,q]
+                alpha=[0,1]
+                initial=[p]
+                accepting=[q]
+                trans=[p>0>p,p>1>q,q>0>q,q>1>p]
+                """, """
+                states=[a,b,c]
+                alpha=[0,10,2]
+                initial=[a]
+                accepting=[a,c]
+                trans=[a>0>b,b>10>b,b>2>c,c>0>a,c>10>c]
+                """);
+    }
+
+    @ParameterizedTest
+    @MethodSource("digitAutomata")
+    void definitionsKeepTheDigitTokensApartFromTheNames(String input) throws Exception {
+        definitionsExpandToTheFlatText(input);
+    }
+
+    private static String write(RegExp regExp, RegExp.Notation notation) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        // Small buffer, so the text is flushed many times
+        RegExpWriter writer = new RegExpWriter(16, notation, Channels.newChannel(output));
+        writer.write(regExp);
+        writer.flush();
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+
+    private Path writeDefinitions(RegExp regExp, RegExp.Notation notation) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegExpWriter writer = new RegExpWriter(notation, Channels.newChannel(output));
+        writer.writeDefinitions(regExp);
+        writer.flush();
+        return Files.write(directory.resolve("definitions-" + notation + ".txt"), output.toByteArray());
+    }
+
+    private static String expand(Path definitions, RegExp.Notation notation) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegExpWriter writer = new RegExpWriter(notation, Channels.newChannel(output));
+        DefinitionsExpander.expand(definitions, writer);
+        writer.flush();
+        return output.toString(StandardCharsets.US_ASCII);
+    }
+}
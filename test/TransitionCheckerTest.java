@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Determinism of {@link TransitionChecker}: transitions grouped by the sources are checked while they are
+ * parsed, and the interleaved ones fall back to {@link Checker#isDeterministic(IndexedFSA)}.
+ */
+class TransitionCheckerTest {
+    /**
+     * Checker, which counts the walks of the FSA
+     */
+    private static class CountingChecker extends Checker {
+        int walks = 0;
+
+        @Override
+        public boolean isDeterministic(IndexedFSA fsa) {
+            walks++;
+            return super.isDeterministic(fsa);
+        }
+    }
+
+    private static String input(String transitions) {
+        return "states=[q0,q1]\nalpha=[a,b]\ninitial=[q0]\naccepting=[q1]\ntrans=[" + transitions + "]\n";
+    }
+
+    private static InputStream toStream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            // Grouped sources
+            "q0>a>q1,q0>b>q0,q1>a>q0; true; false",
+            "q0>a>q1,q0>a>q0,q1>a>q0; false; false",
+            // Source q0 returns after q1
+            "q0>a>q1,q1>a>q0,q0>a>q0; false; true",
+            "q0>a>q1,q1>a>q0,q0>b>q0; true; true",
+            "q1>b>q1,q0>a>q1,q1>a>q0,q0>b>q0; true; true",
+            "q1>b>q1,q0>a>q1,q1>a>q0,q0>b>q0,q1>b>q0; false; true"})
+    void interleavedSourcesFallBackToTheWalk(String transitions, boolean deterministic, boolean interleaved)
+            throws Exception {
+        CountingChecker checker = new CountingChecker();
+        FSATokenizer tokenizer = new FSATokenizer(toStream(input(transitions)), checker);
+        IndexedFSA fsa = tokenizer.parse();
+
+        assertEquals(deterministic, tokenizer.getTransitionChecker().isDeterministic(fsa));
+        assertEquals(deterministic, new Checker().isDeterministic(fsa));
+        assertEquals(interleaved ? 1 : 0, checker.walks);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            "q0>a>q1,q1>a>q0,q0>a>q0; E7: FSA is nondeterministic",
+            "q0>a>q1,q1>a>q0,q0>b>q0; ",
+            "q0>a>q1,q0>a>q0,q1>a>q0; E7: FSA is nondeterministic"})
+    void converterReportsE7OfInterleavedSources(String transitions, String error) throws Exception {
+        ConversionResult result = new FSAConverter(new KleeneAlgorithm()).convert(toStream(input(transitions)));
+        assertEquals(error, result.isSuccess() ? null : result.error().toString().trim());
+    }
+}